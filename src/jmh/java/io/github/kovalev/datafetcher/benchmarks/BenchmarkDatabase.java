@@ -0,0 +1,125 @@
+package io.github.kovalev.datafetcher.benchmarks;
+
+import io.github.kovalev.datafetcher.TestApplication;
+import io.github.kovalev.datafetcher.configuration.TestConfig;
+import io.github.kovalev.datafetcher.domain.Order;
+import io.github.kovalev.datafetcher.domain.OrderItem;
+import io.github.kovalev.datafetcher.domain.Product;
+import io.github.kovalev.datafetcher.domain.User;
+import io.github.kovalev.datafetcher.testutils.OrderGenerator;
+import io.github.kovalev.datafetcher.testutils.OrderItemGenerator;
+import io.github.kovalev.datafetcher.testutils.PostGenerator;
+import io.github.kovalev.datafetcher.testutils.ProductGenerator;
+import io.github.kovalev.datafetcher.testutils.TransactionalExecutor;
+import io.github.kovalev.datafetcher.testutils.UserGenerator;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManager;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Встроенный PostgreSQL с контекстом Spring и тестовыми данными.
+ * <p>
+ * Поднимается один раз на форк JMH: схема создаётся миграциями из тестов,
+ * данные заполняются генераторами из тестов.
+ */
+@Slf4j
+@Getter
+public final class BenchmarkDatabase implements AutoCloseable {
+
+    public static final int USERS = 1_000;
+    public static final int POSTS_PER_USER = 5;
+    public static final int PRODUCTS = 50;
+    public static final int ORDERS = 200;
+    public static final int ORDER_ITEMS = 5_000;
+
+    private static BenchmarkDatabase instance;
+
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+    private final List<UUID> userIds;
+    private final List<Long> orderItemIds;
+
+    private BenchmarkDatabase() throws IOException {
+        this.postgres = EmbeddedPostgres.builder().start();
+        this.context = new SpringApplicationBuilder(TestApplication.class, TestConfig.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.password=postgres",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.orm.jpa.JpaTransactionManager=WARN",
+                        "--logging.level.io.github.kovalev.datafetcher.benchmarks=INFO"
+                );
+        this.userIds = seedUsers();
+        this.orderItemIds = seedOrders();
+        log.info("Тестовые данные созданы: {} пользователей, {} позиций заказов", userIds.size(), orderItemIds.size());
+    }
+
+    /**
+     * Возвращает общий для форка экземпляр, создавая его при первом обращении.
+     *
+     * @return база данных
+     */
+    public static synchronized BenchmarkDatabase get() {
+        if (instance == null) {
+            try {
+                instance = new BenchmarkDatabase();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось запустить встроенный PostgreSQL", e);
+            }
+        }
+        return instance;
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public <T> T bean(String name, Class<T> type) {
+        return context.getBean(name, type);
+    }
+
+    private List<UUID> seedUsers() {
+        val entityManager = bean(EntityManager.class);
+        val userGenerator = bean(UserGenerator.class);
+        val postGenerator = bean(PostGenerator.class);
+        return bean(TransactionalExecutor.class).executeWithInNewTransaction(() -> userGenerator.list(USERS).stream()
+                .peek(entityManager::persist)
+                .peek(user -> postGenerator.list(POSTS_PER_USER, user).forEach(entityManager::persist))
+                .map(User::getId)
+                .toList());
+    }
+
+    private List<Long> seedOrders() {
+        val entityManager = bean(EntityManager.class);
+        return bean(TransactionalExecutor.class).executeWithInNewTransaction(() -> {
+            List<Product> products = bean(ProductGenerator.class).list(PRODUCTS);
+            products.forEach(entityManager::persist);
+            List<Order> orders = bean(OrderGenerator.class).list(ORDERS);
+            orders.forEach(entityManager::persist);
+            return bean(OrderItemGenerator.class).list(ORDER_ITEMS, orders, products).stream()
+                    .peek(entityManager::persist)
+                    .map(OrderItem::getId)
+                    .toList();
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        context.close();
+        postgres.close();
+        instance = null;
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.kovalev.datafetcher.benchmarks;
+
+import io.github.kovalev.datafetcher.domain.OrderItem;
+import io.github.kovalev.datafetcher.domain.OrderItem_;
+import io.github.kovalev.datafetcher.domain.Product_;
+import io.github.kovalev.datafetcher.domain.User;
+import io.github.kovalev.datafetcher.domain.User_;
+import io.github.kovalev.datafetcher.services.DataFetcher;
+import io.github.kovalev.datafetcher.utils.AttributeNode;
+import io.github.kovalev.datafetcher.utils.FunctionParams;
+import io.github.kovalev.datafetcher.utils.GroupParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность основных методов {@link DataFetcher} на встроенном PostgreSQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataFetcherBenchmark {
+
+    private static final List<AttributeNode> POSTS = List.of(new AttributeNode(User_.POSTS, null));
+
+    @Param({"10", "100"})
+    public int size;
+
+    private BenchmarkDatabase database;
+    private DataFetcher<User, UUID> userDataFetcher;
+    private DataFetcher<OrderItem, Long> orderItemFetcher;
+    private List<UUID> userIds;
+    private PageRequest pageRequest;
+    private List<GroupParam> groupParams;
+    private List<FunctionParams> functionParams;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        database = BenchmarkDatabase.get();
+        userDataFetcher = database.bean("userDataFetcher", DataFetcher.class);
+        orderItemFetcher = database.bean("orderItemFetcher", DataFetcher.class);
+        userIds = database.getUserIds();
+        pageRequest = PageRequest.of(1, size, Sort.by(User_.USERNAME));
+        groupParams = List.of(new GroupParam("order.id").alias("orderId"));
+        functionParams = List.of(
+                new FunctionParams("totalSum", "sum", BigDecimal.class, value -> value, OrderItem_.PRODUCT, Product_.PRICE),
+                new FunctionParams("itemCount", "count", Long.class, value -> value, OrderItem_.ID)
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<User> one() {
+        return userDataFetcher.one(randomUserId());
+    }
+
+    @Benchmark
+    public Optional<User> oneWithPosts() {
+        return userDataFetcher.one(randomUserId(), POSTS);
+    }
+
+    @Benchmark
+    public List<User> fetchAllByIds() {
+        int from = ThreadLocalRandom.current().nextInt(userIds.size() - size);
+        return userDataFetcher.fetchAllByIds(userIds.subList(from, from + size), POSTS);
+    }
+
+    @Benchmark
+    public Page<User> page() {
+        return userDataFetcher.page(null, pageRequest, POSTS);
+    }
+
+    @Benchmark
+    public Slice<User> slice() {
+        return userDataFetcher.slice(null, pageRequest, POSTS);
+    }
+
+    @Benchmark
+    public List<Map<String, ?>> groups() {
+        return orderItemFetcher.groups(null, Pageable.ofSize(size), groupParams, map -> map, functionParams);
+    }
+
+    private UUID randomUserId() {
+        return userIds.get(ThreadLocalRandom.current().nextInt(userIds.size()));
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.kovalev.datafetcher.benchmarks;
+
+import io.github.kovalev.datafetcher.domain.Post_;
+import io.github.kovalev.datafetcher.domain.User;
+import io.github.kovalev.datafetcher.domain.User_;
+import io.github.kovalev.datafetcher.services.EntityGraphFactory;
+import io.github.kovalev.datafetcher.utils.AttributeNode;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость построения графа сущности по дереву полей с кэшем и без него.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityGraphFactoryBenchmark {
+
+    private static final List<AttributeNode> ATTRIBUTE_NODES = List.of(
+            new AttributeNode(User_.COMMENTS, null),
+            new AttributeNode(User_.POSTS, List.of(
+                    new AttributeNode(Post_.AUTHOR, null),
+                    new AttributeNode(Post_.COMMENTS, null)
+            ))
+    );
+
+    @Param({"512", "0"})
+    public int cacheSize;
+
+    private BenchmarkDatabase database;
+    private EntityGraphFactory entityGraphFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.get();
+        entityGraphFactory = new EntityGraphFactory(database.bean(EntityManager.class)).cacheSize(cacheSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public EntityGraph<?> graphByAttributeNodes() {
+        return entityGraphFactory.graphByAttributeNodes(ATTRIBUTE_NODES, User.class);
+    }
+}
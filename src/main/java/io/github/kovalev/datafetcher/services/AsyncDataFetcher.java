@@ -0,0 +1,173 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.utils.AttributeNode;
+import io.github.kovalev.datafetcher.utils.CountStrategy;
+import io.github.kovalev.datafetcher.utils.FetchParams;
+import io.github.kovalev.datafetcher.utils.FunctionParams;
+import io.github.kovalev.datafetcher.utils.GroupParam;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.lang.NonNull;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Асинхронная обёртка над {@link DataFetcher}.
+ * <p>
+ * Каждый вызов выполняется на исполнителе (по умолчанию в виртуальном потоке) в собственной транзакции
+ * только для чтения и, соответственно, со своим {@code EntityManager} и соединением. Количество одновременно
+ * выполняемых запросов ограничено, чтобы не исчерпать пул соединений.
+ *
+ * @param <E> тип сущности
+ * @param <I> тип идентификатора
+ */
+public class AsyncDataFetcher<E, I> {
+
+    private final DataFetcher<E, I> dataFetcher;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+    private final Semaphore permits;
+
+    public AsyncDataFetcher(DataFetcher<E, I> dataFetcher, PlatformTransactionManager transactionManager,
+                            int maxConcurrency) {
+        this(dataFetcher, transactionManager, maxConcurrency, DataFetcher.VIRTUAL_THREADS);
+    }
+
+    public AsyncDataFetcher(DataFetcher<E, I> dataFetcher, PlatformTransactionManager transactionManager,
+                            int maxConcurrency, Executor executor) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency должен быть положительным: " + maxConcurrency);
+        }
+        this.dataFetcher = dataFetcher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Выполняет произвольный вызов {@link DataFetcher} асинхронно в отдельной транзакции только для чтения.
+     *
+     * @param call вызов
+     * @param <T>  тип результата
+     * @return результат вызова
+     */
+    public <T> CompletableFuture<T> supplyAsync(@NonNull Function<DataFetcher<E, I>, T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return transactionTemplate.execute(status -> call.apply(dataFetcher));
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#one(Object)}.
+     */
+    public CompletableFuture<Optional<E>> oneAsync(I id) {
+        return supplyAsync(fetcher -> fetcher.one(id));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#one(Object, List)}.
+     */
+    public CompletableFuture<Optional<E>> oneAsync(I id, List<AttributeNode> attributeNodes) {
+        return supplyAsync(fetcher -> fetcher.one(id, attributeNodes));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#one(Object, String)}.
+     */
+    public CompletableFuture<Optional<E>> oneAsync(I id, String entityGraphName) {
+        return supplyAsync(fetcher -> fetcher.one(id, entityGraphName));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#one(Specification, List)}.
+     */
+    public CompletableFuture<Optional<E>> oneAsync(@NonNull Specification<E> specification,
+                                                  List<AttributeNode> attributeNodes) {
+        return supplyAsync(fetcher -> fetcher.one(specification, attributeNodes));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#fetchAllByIds(Collection, List)}.
+     */
+    public CompletableFuture<List<E>> fetchAllByIdsAsync(Collection<I> ids, List<AttributeNode> attributeNodes) {
+        return supplyAsync(fetcher -> fetcher.fetchAllByIds(ids, attributeNodes));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#fetchAllIds(Specification, Pageable)}.
+     */
+    public CompletableFuture<List<I>> fetchAllIdsAsync(Specification<E> specification, @NonNull Pageable pageable) {
+        return supplyAsync(fetcher -> fetcher.fetchAllIds(specification, pageable));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#fetchFields(FetchParams)}.
+     */
+    public <D> CompletableFuture<List<D>> fetchFieldsAsync(@NonNull FetchParams<E, D> params) {
+        return supplyAsync(fetcher -> fetcher.fetchFields(params));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#list(Specification, Sort, List)}.
+     */
+    public CompletableFuture<List<E>> listAsync(@NonNull Specification<E> specification, @NonNull Sort sort,
+                                                List<AttributeNode> attributeNodes) {
+        return supplyAsync(fetcher -> fetcher.list(specification, sort, attributeNodes));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#page(Specification, Pageable, List)}.
+     */
+    public CompletableFuture<Page<E>> pageAsync(Specification<E> specification, @NonNull Pageable pageable,
+                                                List<AttributeNode> attributeNodes) {
+        return supplyAsync(fetcher -> fetcher.page(specification, pageable, attributeNodes));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#page(Specification, Pageable, List, CountStrategy)}.
+     */
+    public CompletableFuture<Page<E>> pageAsync(Specification<E> specification, @NonNull Pageable pageable,
+                                                List<AttributeNode> attributeNodes,
+                                                @NonNull CountStrategy countStrategy) {
+        return supplyAsync(fetcher -> fetcher.page(specification, pageable, attributeNodes, countStrategy));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#slice(Specification, Pageable, List)}.
+     */
+    public CompletableFuture<Slice<E>> sliceAsync(Specification<E> specification, @NonNull Pageable pageable,
+                                                  List<AttributeNode> attributeNodes) {
+        return supplyAsync(fetcher -> fetcher.slice(specification, pageable, attributeNodes));
+    }
+
+    /**
+     * Асинхронный вариант {@link DataFetcher#groups(Specification, Pageable, List, Function, List)}.
+     */
+    public <D> CompletableFuture<List<D>> groupsAsync(Specification<E> specification,
+                                                      Pageable pageable,
+                                                      List<GroupParam> groupParams,
+                                                      Function<Map<String, ?>, D> mapper,
+                                                      List<FunctionParams> functionParams) {
+        return supplyAsync(fetcher -> fetcher.groups(specification, pageable, groupParams, mapper, functionParams));
+    }
+}
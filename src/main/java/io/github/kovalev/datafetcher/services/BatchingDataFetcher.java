@@ -0,0 +1,199 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.utils.AttributeNode;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.lang.NonNull;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Объединяет одиночные запросы сущностей по идентификатору в пакетные (в стиле DataLoader).
+ * <p>
+ * Вызовы {@link #one(Object, List)} не выполняют запрос сразу, а накапливаются по графу сущности.
+ * Пакет отправляется одним {@link DataFetcher#fetchAllByIds(java.util.Collection, List)}, когда набрано
+ * {@code maxBatchSize} идентификаторов, истекло {@code maxWait} с первого вызова в пакете или вызван
+ * {@link #dispatch()}. Повторные идентификаторы в пакете получают тот же результат.
+ * <p>
+ * Планировщик только отсчитывает время ожидания пакета. Сам запрос выполняется на отдельном исполнителе
+ * (по умолчанию в виртуальном потоке) в собственной транзакции только для чтения, поэтому медленная загрузка
+ * не задерживает таймеры других пакетов.
+ * <p>
+ * Экземпляр предназначен для одного запроса (например, одного выполнения GraphQL-запроса),
+ * поэтому результаты не переживают его и не требуют инвалидации.
+ *
+ * @param <E> тип сущности
+ * @param <I> тип идентификатора
+ */
+@Slf4j
+public class BatchingDataFetcher<E, I> implements AutoCloseable {
+
+    private final DataFetcher<E, I> dataFetcher;
+    private final Function<E, I> idFunction;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    public BatchingDataFetcher(DataFetcher<E, I> dataFetcher, Function<E, I> idFunction,
+                               PlatformTransactionManager transactionManager, ScheduledExecutorService scheduler,
+                               int maxBatchSize, Duration maxWait) {
+        this(dataFetcher, idFunction, transactionManager, scheduler, maxBatchSize, maxWait,
+                DataFetcher.VIRTUAL_THREADS);
+    }
+
+    public BatchingDataFetcher(DataFetcher<E, I> dataFetcher, Function<E, I> idFunction,
+                               PlatformTransactionManager transactionManager, ScheduledExecutorService scheduler,
+                               int maxBatchSize, Duration maxWait, Executor executor) {
+        Assert.isTrue(maxBatchSize > 0, "Размер пакета должен быть положительным");
+        Assert.isTrue(!maxWait.isNegative(), "Время ожидания не должно быть отрицательным");
+        this.dataFetcher = dataFetcher;
+        this.idFunction = idFunction;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Запрашивает сущность по идентификатору без графа.
+     *
+     * @param id идентификатор сущности
+     * @return будущий результат
+     */
+    public CompletableFuture<Optional<E>> one(@NonNull I id) {
+        return one(id, List.of());
+    }
+
+    /**
+     * Запрашивает сущность по идентификатору и списку полей. Запрос будет выполнен в составе пакета.
+     *
+     * @param id             идентификатор сущности
+     * @param attributeNodes список полей, которые нужно получить
+     * @return будущий результат
+     */
+    public CompletableFuture<Optional<E>> one(@NonNull I id, List<AttributeNode> attributeNodes) {
+        val key = EntityGraphFactory.signature(attributeNodes);
+        Batch full = null;
+        CompletableFuture<Optional<E>> future;
+        lock.lock();
+        try {
+            var batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch(attributeNodes);
+                batches.put(key, batch);
+                val scheduled = batch;
+                batch.timer = scheduler.schedule(() -> dispatch(key, scheduled), maxWaitNanos, TimeUnit.NANOSECONDS);
+            }
+            future = batch.futures.computeIfAbsent(id, k -> new CompletableFuture<>());
+            if (batch.futures.size() >= maxBatchSize) {
+                batches.remove(key);
+                full = batch;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            full.timer.cancel(false);
+            submit(full);
+        }
+        return future;
+    }
+
+    /**
+     * Немедленно отправляет все накопленные пакеты, не дожидаясь истечения времени ожидания.
+     */
+    public void dispatch() {
+        List<Batch> pending;
+        lock.lock();
+        try {
+            pending = new ArrayList<>(batches.values());
+            batches.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Batch batch : pending) {
+            batch.timer.cancel(false);
+            submit(batch);
+        }
+    }
+
+    /**
+     * Отправляет накопленные пакеты.
+     */
+    @Override
+    public void close() {
+        dispatch();
+    }
+
+    private void dispatch(String key, Batch batch) {
+        lock.lock();
+        try {
+            // Пакет мог быть уже отправлен по размеру или через dispatch()
+            if (!batches.remove(key, batch)) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        submit(batch);
+    }
+
+    private void submit(Batch batch) {
+        try {
+            executor.execute(() -> load(batch));
+        } catch (RejectedExecutionException e) {
+            batch.futures.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private void load(Batch batch) {
+        try {
+            val entities = transactionTemplate.execute(status ->
+                    dataFetcher.fetchAllByIds(batch.futures.keySet(), batch.attributeNodes));
+            Map<I, E> byId = new HashMap<>(entities.size() * 2);
+            for (E entity : entities) {
+                byId.put(idFunction.apply(entity), entity);
+            }
+            batch.futures.forEach((id, future) -> future.complete(Optional.ofNullable(byId.get(id))));
+        } catch (RuntimeException e) {
+            log.warn("Ошибка пакетной загрузки {} идентификаторов", batch.futures.size(), e);
+            batch.futures.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private final class Batch {
+
+        private final List<AttributeNode> attributeNodes;
+        private final Map<I, CompletableFuture<Optional<E>>> futures = new LinkedHashMap<>();
+        private ScheduledFuture<?> timer;
+
+        private Batch(List<AttributeNode> attributeNodes) {
+            this.attributeNodes = attributeNodes;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.utils.LruCache;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.PluralAttribute;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import org.hibernate.graph.Graph;
+import org.hibernate.graph.RootGraph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Загружает коллекции графа сущности отдельными запросами.
+ * <p>
+ * Граф с несколькими коллекциями в одном запросе даёт декартово произведение строк
+ * (например, {@code posts × comments}). Вместо этого основной запрос получает корень
+ * и связи «к одному», а каждая коллекция загружается своим запросом
+ * {@code ... left join fetch коллекция where корень.id in (...)}. Загруженные коллекции
+ * инициализируются у сущностей, уже находящихся в контексте, поэтому объём результата
+ * становится суммой размеров коллекций, а не их произведением.
+ */
+@RequiredArgsConstructor
+class CollectionGraphLoader {
+
+    private static final int MIN_COLLECTIONS = 2;
+
+    private final EntityManager entityManager;
+    private final LruCache<EntityGraph<?>, Plan> plans = new LruCache<>(256);
+
+    /**
+     * Возвращает план загрузки графа или {@code null}, если коллекций в графе меньше двух
+     * и граф выгоднее применить одним запросом.
+     */
+    Plan plan(EntityGraph<?> graph, Class<?> entityClass) {
+        val plan = plans.get(graph, key -> buildPlan(graph, entityClass));
+        return plan.collections().size() < MIN_COLLECTIONS ? null : plan;
+    }
+
+    /**
+     * Загружает коллекции плана для корневых сущностей с указанными идентификаторами.
+     * Корневые сущности должны находиться в текущем контексте.
+     */
+    void load(Plan plan, Class<?> entityClass, String idFieldName, List<?> ids, int chunkSize) {
+        for (CollectionFetch collection : plan.collections()) {
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                val chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+                collectionQuery(collection, entityClass, idFieldName, DataFetcher.padded(chunk));
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void collectionQuery(CollectionFetch collection, Class<?> entityClass, String idFieldName,
+                                 Collection<?> ids) {
+        val cb = entityManager.getCriteriaBuilder();
+        val query = cb.createQuery(Object.class);
+        val root = query.from(entityClass);
+        From<?, ?> owner = root;
+        for (String attribute : collection.ownerPath()) {
+            owner = owner.join(attribute);
+        }
+        addFetches(owner.fetch(collection.attribute(), JoinType.LEFT), collection.toOne());
+        query.select((Selection) owner)
+                .where(root.get(idFieldName).in(ids));
+        entityManager.createQuery(query).getResultList();
+    }
+
+    private static void addFetches(FetchParent<?, ?> parent, List<Node> nodes) {
+        for (Node node : nodes) {
+            addFetches(parent.fetch(node.attribute(), JoinType.LEFT), node.children());
+        }
+    }
+
+    private Plan buildPlan(EntityGraph<?> graph, Class<?> entityClass) {
+        val mainGraph = (RootGraph<?>) entityManager.createEntityGraph(entityClass);
+        val collections = new ArrayList<CollectionFetch>();
+        walk(graph.getAttributeNodes(), entityManager.getMetamodel().managedType(entityClass), List.of(),
+                mainGraph, collections);
+        return new Plan(mainGraph.makeRootGraph(graph.getName(), false), List.copyOf(collections));
+    }
+
+    /**
+     * Обходит узлы графа: связи «к одному» добавляются в граф основного запроса (пока он есть на пути),
+     * коллекции становятся отдельными запросами со своими связями «к одному».
+     */
+    private void walk(List<? extends jakarta.persistence.AttributeNode<?>> nodes, ManagedType<?> type,
+                      List<String> path, Graph<?> target, List<CollectionFetch> collections) {
+        for (val node : nodes) {
+            val name = node.getAttributeName();
+            val attribute = type.getAttribute(name);
+            val childPath = append(path, name);
+            val childType = managedType(attribute);
+            val children = subgraphNodes(node);
+            if (attribute.isCollection()) {
+                collections.add(new CollectionFetch(path, name, toOne(children, childType)));
+                if (childType != null) {
+                    walk(children, childType, childPath, null, collections);
+                }
+            } else {
+                Graph<?> childTarget = null;
+                if (target != null) {
+                    target.addAttributeNode(name);
+                    if (childType != null && !children.isEmpty()) {
+                        childTarget = target.addSubGraph(name);
+                    }
+                }
+                if (childType != null) {
+                    walk(children, childType, childPath, childTarget, collections);
+                }
+            }
+        }
+    }
+
+    private List<Node> toOne(List<? extends jakarta.persistence.AttributeNode<?>> nodes, ManagedType<?> type) {
+        if (type == null) {
+            return List.of();
+        }
+        val result = new ArrayList<Node>();
+        for (val node : nodes) {
+            val attribute = type.getAttribute(node.getAttributeName());
+            if (!attribute.isCollection()) {
+                val childType = managedType(attribute);
+                result.add(new Node(node.getAttributeName(), childType == null
+                        ? List.of()
+                        : toOne(subgraphNodes(node), childType)));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private ManagedType<?> managedType(Attribute<?, ?> attribute) {
+        val javaType = attribute instanceof PluralAttribute<?, ?, ?> plural
+                ? plural.getElementType()
+                : ((SingularAttribute<?, ?>) attribute).getType();
+        return javaType instanceof ManagedType<?> managedType ? managedType : null;
+    }
+
+    private static List<? extends jakarta.persistence.AttributeNode<?>> subgraphNodes(
+            jakarta.persistence.AttributeNode<?> node) {
+        val result = new ArrayList<jakarta.persistence.AttributeNode<?>>();
+        for (Subgraph<?> subgraph : node.getSubgraphs().values()) {
+            result.addAll(subgraph.getAttributeNodes());
+        }
+        return result;
+    }
+
+    private static List<String> append(List<String> path, String attribute) {
+        val result = new ArrayList<>(path);
+        result.add(attribute);
+        return List.copyOf(result);
+    }
+
+    /**
+     * План загрузки: граф основного запроса без коллекций и запросы коллекций.
+     */
+    record Plan(EntityGraph<?> mainGraph, List<CollectionFetch> collections) {
+    }
+
+    /**
+     * Коллекция {@code attribute} владельца, достижимого от корня по {@code ownerPath},
+     * и связи «к одному» её элементов.
+     */
+    record CollectionFetch(List<String> ownerPath, String attribute, List<Node> toOne) {
+    }
+
+    record Node(String attribute, List<Node> children) {
+    }
+}
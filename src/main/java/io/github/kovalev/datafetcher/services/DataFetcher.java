@@ -1,44 +1,86 @@
 package io.github.kovalev.datafetcher.services;
 
 import io.github.kovalev.datafetcher.utils.AttributeNode;
+import io.github.kovalev.datafetcher.utils.CountStrategy;
 import io.github.kovalev.datafetcher.utils.FetchParams;
 import io.github.kovalev.datafetcher.utils.FunctionParams;
+import io.github.kovalev.datafetcher.utils.GroupLevel;
 import io.github.kovalev.datafetcher.utils.GroupParam;
+import io.github.kovalev.datafetcher.utils.KeysetSpecification;
+import io.github.kovalev.datafetcher.utils.LruCache;
+import io.github.kovalev.datafetcher.utils.RecordMapper;
+import io.github.kovalev.datafetcher.utils.SingleFlight;
 import io.github.kovalev.specificationhelper.specifications.Equal;
 import io.github.kovalev.specificationhelper.specifications.In;
 import io.github.kovalev.specificationhelper.utils.PathCalculator;
 import jakarta.persistence.EntityGraph;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Id;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Order;
 import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import jakarta.persistence.criteria.Selection;
 import lombok.val;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.graph.GraphSemantic;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaSubQuery;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Stream;
 
 import static org.springframework.data.domain.Sort.Direction.ASC;
@@ -47,6 +89,10 @@ import static org.springframework.data.domain.Sort.Direction.ASC;
 public class DataFetcher<E, I> {
 
     private static final PageRequest DEFAULT_PAGE = PageRequest.ofSize(Integer.MAX_VALUE);
+    private static final int DEFAULT_COUNT_CONCURRENCY = 4;
+    private static final String NO_GRAPH = "none";
+    private static final String DYNAMIC_GRAPH = "dynamic";
+    static final Executor VIRTUAL_THREADS = command -> Thread.ofVirtual().name("data-fetcher").start(command);
 
     private final String idFieldName;
     private final PageRequest defaultPagerequest;
@@ -54,6 +100,26 @@ public class DataFetcher<E, I> {
     private final Class<E> entityClass;
     private final Function<E, I> idFunction;
     private final EntityGraphFactory entityGraphFactory;
+    private final RowCountEstimator rowCountEstimator;
+    private int fetchSize = 1000;
+    private int idsChunkSize = 1024;
+    private boolean arrayIdBinding;
+    private Executor countExecutor;
+    private Semaphore countPermits;
+    private SeparateEntityManager separateEntityManager;
+    private FetchMetrics metrics = FetchMetrics.NOOP;
+    private CollectionGraphLoader collectionGraphLoader;
+    private LruCache<EntityKey, E> entityCache;
+    private ResultCache resultCache;
+    private SingleFlight<ResultCache.Key, Object> inFlightQueries;
+    private LruCache<ResultCache.Key, Long> countCache;
+    private EntityVersions entityVersions;
+    private List<Class<?>> countDependencies = List.of();
+    private RollupQuery rollupQuery;
+    private int scanPartitions = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool mappingPool;
+    private int mappingThreshold;
+    private Executor scanExecutor = VIRTUAL_THREADS;
 
     public DataFetcher(EntityManager entityManager, Class<E> entityClass, Function<E, I> idFunction,
                        EntityGraphFactory entityGraphFactory) {
@@ -67,6 +133,286 @@ public class DataFetcher<E, I> {
                 .orElse("id");
         this.defaultPagerequest = PageRequest.of(0, Integer.MAX_VALUE, Sort.by(ASC, idFieldName));
         this.entityGraphFactory = entityGraphFactory;
+        this.rowCountEstimator = new RowCountEstimator();
+    }
+
+    /**
+     * Устанавливает количество строк, получаемых JDBC-драйвером за одно обращение при потоковой выборке.
+     *
+     * @param fetchSize размер порции строк
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> fetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "fetchSize должен быть положительным");
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Устанавливает максимальное количество идентификаторов в одном запросе загрузки по идентификаторам.
+     * Значение округляется вниз до степени двойки.
+     *
+     * @param idsChunkSize размер порции идентификаторов
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> idsChunkSize(int idsChunkSize) {
+        Assert.isTrue(idsChunkSize > 0, "idsChunkSize должен быть положительным");
+        this.idsChunkSize = Integer.highestOneBit(idsChunkSize);
+        return this;
+    }
+
+    /**
+     * Включает передачу идентификаторов одним параметром-массивом ({@code id = any(?)}) вместо списка
+     * параметров {@code in (?, ?, ...)}. Поддерживается PostgreSQL.
+     *
+     * @param arrayIdBinding передавать идентификаторы массивом
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> arrayIdBinding(boolean arrayIdBinding) {
+        this.arrayIdBinding = arrayIdBinding;
+        return this;
+    }
+
+    /**
+     * Включает подсчёт общего количества в {@link #page} параллельно с выборкой идентификаторов и сущностей.
+     * Подсчёт выполняется в виртуальном потоке на отдельном соединении и не видит незафиксированных
+     * изменений текущей транзакции.
+     * <p>
+     * Такая страница занимает два соединения: соединение транзакции вызывающего кода и соединение подсчёта.
+     * Одновременно выполняется не больше {@value #DEFAULT_COUNT_CONCURRENCY} параллельных подсчётов, остальные
+     * страницы считаются последовательно в соединении вызывающего кода, см. {@link #concurrentCount(Executor, int)}.
+     *
+     * @param concurrentCount выполнять подсчёт параллельно
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> concurrentCount(boolean concurrentCount) {
+        return concurrentCount
+                ? concurrentCount(VIRTUAL_THREADS, DEFAULT_COUNT_CONCURRENCY)
+                : concurrentCount(null, DEFAULT_COUNT_CONCURRENCY);
+    }
+
+    /**
+     * Включает подсчёт общего количества в {@link #page} параллельно с выборкой идентификаторов и сущностей
+     * на указанном исполнителе, не больше {@value #DEFAULT_COUNT_CONCURRENCY} подсчётов одновременно.
+     *
+     * @param countExecutor исполнитель запросов подсчёта
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> concurrentCount(@NonNull Executor countExecutor) {
+        return concurrentCount(countExecutor, DEFAULT_COUNT_CONCURRENCY);
+    }
+
+    /**
+     * Включает подсчёт общего количества в {@link #page} параллельно с выборкой идентификаторов и сущностей
+     * на указанном исполнителе.
+     * <p>
+     * Каждая такая страница занимает два соединения: соединение транзакции вызывающего кода удерживается,
+     * пока подсчёт ждёт второе соединение из пула. Если бы параллельно считались все страницы, под нагрузкой
+     * каждый запрос держал бы одно соединение и ждал второе, и пул бы исчерпался. Поэтому параллельно
+     * выполняется не больше {@code maxConcurrency} подсчётов: страница, для которой разрешения нет, считается
+     * последовательно в соединении вызывающего кода. Значение должно быть меньше размера пула соединений.
+     *
+     * @param countExecutor  исполнитель запросов подсчёта или {@code null}, чтобы считать последовательно
+     * @param maxConcurrency наибольшее количество одновременных параллельных подсчётов
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> concurrentCount(@Nullable Executor countExecutor, int maxConcurrency) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency должен быть положительным: " + maxConcurrency);
+        this.countExecutor = countExecutor;
+        this.countPermits = new Semaphore(maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Настраивает параллельное чтение ({@link #fetchAllIdsParallel}, {@link #parallelStreamAllIds},
+     * {@link #listParallel}). По умолчанию выборка делится на число процессоров, диапазоны читаются
+     * в виртуальных потоках. Каждый диапазон занимает отдельное соединение, поэтому количество частей
+     * не должно превышать свободный запас пула соединений.
+     *
+     * @param partitions количество диапазонов идентификаторов
+     * @param executor   исполнитель запросов диапазонов
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> parallelScan(int partitions, @NonNull Executor executor) {
+        Assert.isTrue(partitions > 0, "Количество диапазонов должно быть положительным");
+        this.scanPartitions = partitions;
+        this.scanExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Включает параллельное преобразование строк результата в {@link #fetchFields} и {@code groups}.
+     * <p>
+     * Если строк не меньше {@code threshold}, преобразователи ({@link FetchParams}, агрегатных функций
+     * и пользовательский {@code mapper}) выполняются параллельным потоком в {@code pool}, порядок
+     * результата сохраняется. Меньшие результаты преобразуются последовательно в вызывающем потоке.
+     * Преобразователи должны быть потокобезопасными и не рассчитывать на контекст вызывающего потока
+     * (транзакция, {@link ThreadLocal}).
+     *
+     * @param pool      пул преобразования строк
+     * @param threshold минимальное количество строк для параллельного преобразования
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> parallelMapping(@NonNull ForkJoinPool pool, int threshold) {
+        Assert.isTrue(threshold > 0, "Порог параллельного преобразования должен быть положительным");
+        this.mappingPool = pool;
+        this.mappingThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Устанавливает приёмник метрик, например {@link MicrometerFetchMetrics}.
+     * По умолчанию метрики не собираются.
+     *
+     * @param metrics приёмник метрик
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> metrics(@NonNull FetchMetrics metrics) {
+        Assert.notNull(metrics, "Приёмник метрик не должен быть null");
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Включает загрузку коллекций графа отдельными запросами.
+     * <p>
+     * Если граф содержит две и более коллекции, основной запрос получает только корень и связи «к одному»,
+     * а каждая коллекция загружается одним запросом {@code in (идентификаторы корней)} на уровень графа.
+     * Это исключает декартово произведение строк при выборке нескольких коллекций.
+     *
+     * @param separateCollectionFetches признак загрузки коллекций отдельными запросами
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> separateCollectionFetches(boolean separateCollectionFetches) {
+        this.collectionGraphLoader = separateCollectionFetches ? new CollectionGraphLoader(entityManager) : null;
+        return this;
+    }
+
+    /**
+     * Включает кэш сущностей, загружаемых по идентификатору, с ограничением количества записей.
+     *
+     * @param maximumSize      максимальное количество записей
+     * @param expireAfterWrite время жизни записи, null — без ограничения
+     * @return этот же экземпляр
+     * @see #entityCache(long, ToLongFunction, Duration)
+     */
+    public DataFetcher<E, I> entityCache(int maximumSize, @Nullable Duration expireAfterWrite) {
+        return entityCache(maximumSize, entity -> 1, expireAfterWrite);
+    }
+
+    /**
+     * Включает кэш сущностей, загружаемых по идентификатору, с ограничением суммарного веса.
+     * <p>
+     * Записи кэшируются по идентификатору и графу сущности и используются методами {@code one(id, ...)}
+     * и {@code fetchAllByIds} (а также загрузкой содержимого страниц и срезов): из базы данных
+     * запрашиваются только отсутствующие в кэше идентификаторы. Сущности в кэше отсоединены
+     * и разделяются между вызывающими, поэтому изменять их нельзя. После изменения данных
+     * записи нужно удалить через {@link #evict(Object)} или {@link #evictAll()}.
+     *
+     * @param maximumWeight    максимальный суммарный вес сущностей
+     * @param weigher          функция веса сущности
+     * @param expireAfterWrite время жизни записи, null — без ограничения
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> entityCache(long maximumWeight, @NonNull ToLongFunction<? super E> weigher,
+                                         @Nullable Duration expireAfterWrite) {
+        this.entityCache = new LruCache<>(maximumWeight, weigher, expireAfterWrite, EntityKey::id);
+        return this;
+    }
+
+    /**
+     * Удаляет из кэша сущностей все записи с указанным идентификатором, независимо от графа.
+     *
+     * @param id идентификатор сущности
+     */
+    public void evict(@NonNull I id) {
+        if (entityCache != null) {
+            entityCache.invalidateGroup(id);
+        }
+    }
+
+    /**
+     * Включает кэш результатов {@code page}, {@code slice} и {@code groups}.
+     * <p>
+     * Ключом служит отпечаток запроса, построенного по спецификации (включая значения условий),
+     * вместе с параметрами пагинации, графом сущности и способом подсчёта. Одновременные одинаковые
+     * запросы при промахе выполняются один раз. Объём ограничен суммарным количеством строк в результатах,
+     * время жизни записей рассчитано на короткие интервалы. Результаты разделяются между вызывающими,
+     * изменять их нельзя.
+     * <p>
+     * Кэш общий для всех транзакций: результат, прочитанный в одной транзакции, получат другие, в том числе
+     * с другим уровнем изоляции, и он не учитывает изменения, сделанные после его чтения. Если в контексте
+     * текущей транзакции есть несохранённые изменения, кэш не используется, чтобы они не попали к другим
+     * вызывающим. Изменения, уже сброшенные в базу данных до вызова, но не зафиксированные, так не распознаются,
+     * поэтому кэш предназначен для путей только для чтения.
+     *
+     * @param maximumRows      максимальное суммарное количество строк в кэше
+     * @param expireAfterWrite время жизни записи
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> resultCache(long maximumRows, @NonNull Duration expireAfterWrite) {
+        this.resultCache = new ResultCache(maximumRows, expireAfterWrite);
+        return this;
+    }
+
+    /**
+     * Включает кэш общего количества элементов страницы.
+     * <p>
+     * Ключом служит отпечаток запроса по спецификации (включая значения условий), способ подсчёта
+     * и версия данных класса сущности из {@code versions}. Пока версия не изменилась, переход
+     * между страницами с тем же фильтром не выполняет подсчёт повторно; после изменения данных старые
+     * записи больше не используются и вытесняются. Если спецификации обращаются к другим сущностям
+     * (соединения, подзапросы), их классы передаются в {@code dependencies}, чтобы их изменения
+     * тоже инвалидировали подсчёт.
+     *
+     * @param maximumSize      максимальное количество записей
+     * @param expireAfterWrite время жизни записи
+     * @param versions         версии данных, см. {@link EntityVersions#bindTo} и {@link EntityVersions#bump}
+     * @param dependencies     классы других сущностей, от которых зависит результат подсчёта
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> countCache(int maximumSize, @NonNull Duration expireAfterWrite,
+                                        @NonNull EntityVersions versions, @NonNull Class<?>... dependencies) {
+        this.countCache = new LruCache<>(maximumSize, total -> 1, expireAfterWrite);
+        this.entityVersions = versions;
+        this.countDependencies = List.of(dependencies);
+        return this;
+    }
+
+    /**
+     * Включает объединение одновременных одинаковых запросов {@code groups} и подсчёта общего количества
+     * элементов страницы.
+     * <p>
+     * Запросы сравниваются по отпечатку, включающему значения условий. Пока запрос выполняется, потоки
+     * с таким же запросом не обращаются к базе данных, а ожидают и получают его результат. Готовые
+     * результаты не сохраняются (для этого предназначен {@link #resultCache}), поэтому данные не устаревают.
+     * <p>
+     * Ожидающий поток получает результат, прочитанный в транзакции другого потока: незафиксированные изменения
+     * его собственной транзакции в этом результате не видны. Если в контексте текущей транзакции есть
+     * несохранённые изменения, запрос выполняется отдельно. Изменения, уже сброшенные в базу данных, но
+     * не зафиксированные, так не распознаются, поэтому объединение предназначено для путей только для чтения.
+     *
+     * @param coalesceQueries объединять ли одинаковые запросы
+     * @return этот же экземпляр
+     */
+    public DataFetcher<E, I> coalesceQueries(boolean coalesceQueries) {
+        this.inFlightQueries = coalesceQueries ? new SingleFlight<>() : null;
+        return this;
+    }
+
+    /**
+     * Очищает кэш сущностей, кэш результатов и кэш подсчётов.
+     */
+    public void evictAll() {
+        if (countCache != null) {
+            countCache.invalidateAll();
+        }
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
     }
 
     /**
@@ -87,10 +433,41 @@ public class DataFetcher<E, I> {
      * @return список идентификаторов
      */
     public List<I> fetchAllIds(Specification<E> specification, @NonNull Pageable pageable) {
-        return fetchFields(
+        long start = metrics.start();
+        List<I> ids = ids(specification, pageable);
+        record("fetchAllIds", null, start, ids.size());
+        return ids;
+    }
+
+    /**
+     * Получает поля из базы данных на основе предоставленных параметров.
+     *
+     * @param params параметры для получения полей
+     * @param <D>    тип полей, которые нужно получить
+     * @return список полученных полей
+     */
+    public <D> List<D> fetchFields(@NonNull FetchParams<E, D> params) {
+        long start = metrics.start();
+        List<D> result = mapRows(rows(params), params::map);
+        record("fetchFields", null, start, result.size());
+        return result;
+    }
+
+    /**
+     * Получает поток идентификаторов сущностей по спецификации.
+     * <p>
+     * Строки читаются с сервера порциями по {@link #fetchSize(int)} без материализации всего результата.
+     * Должен вызываться внутри транзакции, поток необходимо закрыть после использования.
+     *
+     * @param specification спецификация
+     * @return поток идентификаторов
+     */
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<I> streamAllIds(@Nullable Specification<E> specification) {
+        return streamFields(
                 new FetchParams<>(
                         specification,
-                        pageable,
+                        defaultPagerequest,
                         list -> (I) list.getFirst(),
                         List.of(List.of(idFieldName))
                 )
@@ -98,59 +475,206 @@ public class DataFetcher<E, I> {
     }
 
     /**
-     * Получает поля из базы данных на основе предоставленных параметров.
+     * Получает поток полей из базы данных на основе предоставленных параметров.
+     * <p>
+     * Строки читаются с сервера порциями по {@link #fetchSize(int)} без материализации всего результата.
+     * Должен вызываться внутри транзакции, поток необходимо закрыть после использования.
      *
      * @param params параметры для получения полей
      * @param <D>    тип полей, которые нужно получить
-     * @return список полученных полей
+     * @return поток полученных полей
      */
-    public <D> List<D> fetchFields(@NonNull FetchParams<E, D> params) {
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public <D> Stream<D> streamFields(@NonNull FetchParams<E, D> params) {
+        val fields = params.fields();
+        return fieldsQuery(params)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultStream()
+                .map(tuple -> params.map(row(tuple, fields.size())));
+    }
+
+    /**
+     * Получает все идентификаторы сущностей по спецификации, читая диапазоны идентификаторов параллельно.
+     * <p>
+     * Выборка делится на диапазоны по наименьшему и наибольшему идентификатору (поддерживаются числовые
+     * идентификаторы и {@link UUID}), каждый диапазон читается на своём соединении, см.
+     * {@link #parallelScan(int, Executor)}. Результат упорядочен по идентификатору. Запросы выполняются
+     * в отдельных транзакциях и не видят незафиксированных изменений текущей транзакции.
+     *
+     * @param specification спецификация
+     * @return список идентификаторов
+     */
+    public List<I> fetchAllIdsParallel(@Nullable Specification<E> specification) {
+        long start = metrics.start();
+        List<I> result = scan(specification, this::rangeIds);
+        record("fetchAllIdsParallel", null, start, result.size());
+        return result;
+    }
+
+    /**
+     * Получает параллельный поток идентификаторов сущностей по спецификации.
+     * <p>
+     * Элементы потока — диапазоны идентификаторов, которые читаются на отдельных соединениях
+     * в потоках, обрабатывающих поток, поэтому чтение и обработка разных диапазонов выполняются
+     * на разных ядрах. Порядок элементов не гарантируется.
+     *
+     * @param specification спецификация
+     * @return параллельный поток идентификаторов
+     */
+    public Stream<I> parallelStreamAllIds(@Nullable Specification<E> specification) {
+        val separateEntityManager = separateEntityManager();
+        return IdRanges.split(entityManager, entityClass, idFieldName, specification, scanPartitions)
+                .parallelStream()
+                .flatMap(range -> separateEntityManager.readOnly(em -> rangeIds(em, range)).stream());
+    }
+
+    /**
+     * Получает сущности по спецификации и списку полей, читая диапазоны идентификаторов параллельно,
+     * см. {@link #fetchAllIdsParallel}. Сущности загружаются в отдельных контекстах и возвращаются
+     * отсоединёнными, результат упорядочен по идентификатору.
+     *
+     * @param specification  спецификация
+     * @param attributeNodes список полей, которые нужно получить
+     * @return список сущностей
+     */
+    public List<E> listParallel(@Nullable Specification<E> specification, List<AttributeNode> attributeNodes) {
+        return listParallel(specification, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+    }
+
+    /**
+     * Получает сущности по спецификации и имени графа сущности, читая диапазоны идентификаторов параллельно,
+     * см. {@link #listParallel(Specification, List)}.
+     *
+     * @param specification   спецификация
+     * @param entityGraphName имя графа сущности
+     * @return список сущностей
+     */
+    public List<E> listParallel(@Nullable Specification<E> specification, String entityGraphName) {
+        return listParallel(specification, entityGraphFactory.graphByName(entityGraphName));
+    }
+
+    private List<E> listParallel(Specification<E> specification, EntityGraph<?> graph) {
+        long start = metrics.start();
+        val sort = Sort.by(ASC, idFieldName);
+        List<E> result = scan(specification, (em, range) -> entitiesQuery(em, range, sort, graph)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultList());
+        record("listParallel", graph, start, result.size());
+        return result;
+    }
+
+    /**
+     * Читает диапазоны идентификаторов на исполнителе {@link #parallelScan} и объединяет результаты
+     * в порядке диапазонов.
+     */
+    private <T> List<T> scan(Specification<E> specification,
+                             BiFunction<EntityManager, Specification<E>, List<T>> loader) {
+        val separateEntityManager = separateEntityManager();
+        val ranges = IdRanges.split(entityManager, entityClass, idFieldName, specification, scanPartitions);
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(ranges.size());
+        for (val range : ranges) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> separateEntityManager.readOnly(em -> loader.apply(em, range)), scanExecutor));
+        }
+        List<T> result = new ArrayList<>();
+        try {
+            for (val future : futures) {
+                result.addAll(join(future));
+            }
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return result;
+    }
+
+    private List<I> rangeIds(EntityManager entityManager, Specification<E> range) {
+        val params = new FetchParams<E, I>(range, defaultPagerequest, list -> (I) list.getFirst(),
+                List.of(List.of(idFieldName)));
+        return fieldsQuery(entityManager, params)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultList()
+                .stream()
+                .map(tuple -> params.map(row(tuple, 1)))
+                .toList();
+    }
+
+    /**
+     * Получает проекцию в записи, имена компонентов которых совпадают с путями полей сущности.
+     *
+     * @param recordType    тип записи
+     * @param specification спецификация
+     * @param pageable      параметры пагинации
+     * @param <R>           тип записи
+     * @return список записей
+     */
+    public <R extends Record> List<R> fetchProjection(@NonNull Class<R> recordType,
+                                                      @Nullable Specification<E> specification,
+                                                      @NonNull Pageable pageable) {
+        return fetchProjection(recordType, specification, pageable, RecordMapper.of(recordType).componentNames());
+    }
+
+    /**
+     * Получает проекцию в записи без материализации сущностей.
+     * <p>
+     * Выбираются только указанные поля, каждая строка результата передаётся
+     * в канонический конструктор записи без промежуточных списков. Пути полей
+     * сопоставляются компонентам записи по порядку, вложенные поля задаются через точку.
+     *
+     * @param recordType    тип записи
+     * @param specification спецификация
+     * @param pageable      параметры пагинации
+     * @param paths         пути полей в порядке компонентов записи
+     * @param <R>           тип записи
+     * @return список записей
+     */
+    public <R extends Record> List<R> fetchProjection(@NonNull Class<R> recordType,
+                                                      @Nullable Specification<E> specification,
+                                                      @NonNull Pageable pageable,
+                                                      @NonNull List<String> paths) {
+        val mapper = RecordMapper.of(recordType);
+        Assert.isTrue(paths.size() == mapper.componentNames().size(),
+                "Количество полей не совпадает с количеством компонентов записи " + recordType.getName());
+
         val cb = entityManager.getCriteriaBuilder();
-        val query = cb.createTupleQuery();
+        val query = cb.createQuery(Object[].class);
         val root = query.from(entityClass);
-        if (params.specification() != null) {
-            val predicate = params.specification().toPredicate(root, query, cb);
+        if (specification != null) {
+            val predicate = specification.toPredicate(root, query, cb);
             if (predicate != null) {
                 query.where(predicate);
             }
         }
-        val orders = new ArrayList<Order>();
         val selectPaths = new LinkedHashSet<Path<?>>();
-        val fields = params.fields();
-        for (List<String> path : fields) {
-            Path<Object> objectPath = root.get(path.getFirst());
-            if (path.size() > 1) {
-                for (int i = 1; i < path.size(); i++) {
-                    objectPath = objectPath.get(path.get(i));
-                }
-            }
+        val selections = new ArrayList<Selection<?>>();
+        for (String path : paths) {
+            Path<Object> objectPath = new PathCalculator<>(root, path.split("\\.")).path();
             selectPaths.add(objectPath);
+            selections.add(objectPath);
         }
-        val pageable = params.pageable();
+        val orders = new ArrayList<Order>();
         for (Sort.Order order : pageable.getSort()) {
-            var path = new PathCalculator<>(root, order.getProperty().split("\\.")).path();
+            Path<Object> path = new PathCalculator<>(root, order.getProperty().split("\\.")).path();
             orders.add(ASC == order.getDirection() ? cb.asc(path) : cb.desc(path));
-            selectPaths.add(path);
+            if (selectPaths.add(path)) {
+                selections.add(path);
+            }
         }
-        query.select(cb.tuple(selectPaths.toArray(new Selection<?>[]{})));
-        query.distinct(true);
+        query.multiselect(selections);
+        query.distinct(distinctFields(query, selectPaths));
         query.orderBy(orders);
 
-        val result = entityManager.createQuery(query)
-                .setFirstResult((int) pageable.getOffset())
-                .setMaxResults(pageable.getPageSize())
-                .getResultList()
-                .stream()
-                .map(tuple -> {
-                    List<Object> list = new ArrayList<>();
-                    for (int i = 0; i < fields.size(); i++) {
-                        list.add(tuple.get(i));
-                    }
-                    return list;
-                })
-                .toList();
-
-        return result.stream().map(params::map).toList();
+        val typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset())
+                    .setMaxResults(pageable.getPageSize());
+        }
+        List<?> rows = typedQuery.getResultList();
+        val result = new ArrayList<R>(rows.size());
+        for (Object row : rows) {
+            result.add(mapper.map(row instanceof Object[] values ? values : new Object[]{row}));
+        }
+        return result;
     }
 
     /**
@@ -171,7 +695,7 @@ public class DataFetcher<E, I> {
      * @return опциональное значение сущности
      */
     public Optional<E> one(I id, String entityGraphName) {
-        return one(new Equal<>(id, idFieldName), entityGraphName);
+        return oneById(id, entityGraphFactory.graphByName(entityGraphName));
     }
 
     /**
@@ -182,7 +706,7 @@ public class DataFetcher<E, I> {
      * @return опциональное значение сущности
      */
     public Optional<E> one(I id, List<AttributeNode> attributeNodes) {
-        return one(new Equal<>(id, idFieldName), entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+        return oneById(id, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
     }
 
 
@@ -257,7 +781,7 @@ public class DataFetcher<E, I> {
      * @return список сущностей
      */
     public List<E> list(@NonNull Specification<E> specification, @NonNull Sort sort, String entityGraphName) {
-        return fetchEntities(specification, sort, entityGraphFactory.graphByName(entityGraphName));
+        return list(specification, sort, entityGraphFactory.graphByName(entityGraphName));
     }
 
     /**
@@ -269,7 +793,7 @@ public class DataFetcher<E, I> {
      * @return список сущностей
      */
     public List<E> list(@NonNull Specification<E> specification, @NonNull Sort sort, List<AttributeNode> attributeNodes) {
-        return fetchEntities(specification, sort, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+        return list(specification, sort, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
     }
 
     /**
@@ -280,7 +804,7 @@ public class DataFetcher<E, I> {
      * @return список сущностей
      */
     public List<E> list(@NonNull Specification<E> specification, String entityGraphName) {
-        return fetchEntities(specification, Sort.unsorted(), entityGraphFactory.graphByName(entityGraphName));
+        return list(specification, Sort.unsorted(), entityGraphFactory.graphByName(entityGraphName));
     }
 
     /**
@@ -291,7 +815,7 @@ public class DataFetcher<E, I> {
      * @return список сущностей
      */
     public List<E> list(@NonNull Specification<E> specification, List<AttributeNode> attributeNodes) {
-        return fetchEntities(specification, Sort.unsorted(), entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+        return list(specification, Sort.unsorted(), entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
     }
 
     /**
@@ -301,84 +825,311 @@ public class DataFetcher<E, I> {
      * @return список сущностей
      */
     public List<E> list(@NonNull Specification<E> specification) {
-        return fetchEntities(specification, Sort.unsorted(), null);
+        return list(specification, Sort.unsorted(), (EntityGraph<?>) null);
     }
 
     /**
-     * Получает страницу сущностей по спецификации и параметрам пагинации.
+     * Подготавливает шаблон запроса сущностей для многократного выполнения.
+     * <p>
+     * Спецификация должна задавать значения условий именованными параметрами
+     * ({@code cb.parameter(String.class, "name")}), значения передаются при выполнении шаблона.
+     * Дерево полей компилируется в fetch-соединения, а не в подсказку графа, чтобы шаблон содержал запрос целиком.
+     * Шаблон экономит построение запроса (спецификацию, пути сортировки, соединения), но не трансляцию в SQL,
+     * см. {@link PreparedFetch}.
      *
-     * @param specification спецификация для выборки сущностей
-     * @param pageable      параметры пагинации
-     * @return страница сущностей
+     * @param specification  спецификация с именованными параметрами
+     * @param sort           сортировка
+     * @param attributeNodes список полей, которые нужно получить
+     * @return шаблон запроса
      */
-    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable) {
-        return page(specification, pageable, List.of());
+    public PreparedFetch<E> prepare(@Nullable Specification<E> specification, @NonNull Sort sort,
+                                    List<AttributeNode> attributeNodes) {
+        val cb = entityManager.getCriteriaBuilder();
+
+        val query = cb.createQuery(entityClass);
+        val root = query.from(entityClass);
+        addFetches(root, attributeNodes);
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        val orders = new ArrayList<Order>();
+        for (Sort.Order order : sort) {
+            Path<Object> path = new PathCalculator<>(root, order.getProperty().split("\\.")).path();
+            orders.add(ASC == order.getDirection() ? cb.asc(path) : cb.desc(path));
+        }
+        query.orderBy(orders);
+
+        val countQuery = cb.createQuery(Long.class);
+        val countRoot = countQuery.from(entityClass);
+        val countPredicate = specification == null ? null : specification.toPredicate(countRoot, countQuery, cb);
+        if (countPredicate != null) {
+            countQuery.where(countPredicate);
+        }
+        countQuery.select(QueryJoins.multipliesRows(countQuery) ? cb.countDistinct(countRoot) : cb.count(countRoot));
+
+        return new PreparedFetch<>(query, countQuery,
+                EntityGraphFactory.signature(attributeNodes).isEmpty() ? NO_GRAPH : DYNAMIC_GRAPH);
     }
 
     /**
-     * Получает страницу сущностей по спецификации, параметрам пагинации и списку полей.
+     * Выполняет подготовленный шаблон и возвращает список сущностей.
      *
-     * @param specification спецификация для выборки сущностей
-     * @param pageable      параметры пагинации
-     * @param attributeNodes        список полей, которые нужно получить
-     * @return страница сущностей
+     * @param preparedFetch шаблон запроса
+     * @param parameters    значения именованных параметров
+     * @return список сущностей
      */
-    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable, List<AttributeNode> attributeNodes) {
-        return page(specification, pageable, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+    public List<E> list(@NonNull PreparedFetch<E> preparedFetch, @NonNull Map<String, ?> parameters) {
+        long start = metrics.start();
+        List<E> result = preparedQuery(preparedFetch.getQuery(), parameters).getResultList();
+        result.forEach(entityManager::detach);
+        recordOperation("list", preparedFetch.getGraphName(), start, result.size());
+        return result;
     }
 
     /**
-     * Получает страницу сущностей по спецификации, имени графа сущности и параметрам пагинации.
+     * Выполняет подготовленный шаблон и возвращает первую сущность.
      *
-     * @param specification   спецификация для выборки сущностей
-     * @param entityGraphName имя графа сущности
-     * @param pageable        параметры пагинации
-     * @return страница сущностей
+     * @param preparedFetch шаблон запроса
+     * @param parameters    значения именованных параметров
+     * @return опциональное значение сущности
      */
-    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable, String entityGraphName) {
-        return page(specification, pageable, entityGraphFactory.graphByName(entityGraphName));
+    public Optional<E> one(@NonNull PreparedFetch<E> preparedFetch, @NonNull Map<String, ?> parameters) {
+        long start = metrics.start();
+        Optional<E> result = preparedQuery(preparedFetch.getQuery(), parameters).getResultStream().findFirst();
+        result.ifPresent(entityManager::detach);
+        recordOperation("one", preparedFetch.getGraphName(), start, result.isPresent() ? 1 : 0);
+        return result;
     }
 
     /**
-     * Получает срез сущностей по спецификации и параметрам пагинации.
+     * Выполняет подготовленный шаблон подсчёта количества сущностей.
      *
-     * @param specification спецификация для выборки сущностей
-     * @param pageable      параметры пагинации
-     * @return срез сущностей
+     * @param preparedFetch шаблон запроса
+     * @param parameters    значения именованных параметров
+     * @return количество сущностей
      */
-    public Slice<E> slice(Specification<E> specification, @NonNull Pageable pageable) {
-        return slice(specification, pageable, List.of());
+    public long count(@NonNull PreparedFetch<E> preparedFetch, @NonNull Map<String, ?> parameters) {
+        long start = metrics.start();
+        long count = preparedQuery(preparedFetch.getCountQuery(), parameters).getSingleResult();
+        recordOperation("count", preparedFetch.getGraphName(), start, 1);
+        return count;
     }
 
     /**
-     * Получает срез сущностей по спецификации, параметрам пагинации и списку полей.
+     * Получает поток сущностей по спецификации, сортировке и списку полей.
+     * <p>
+     * Строки читаются через серверный курсор порциями по {@link #fetchSize(int)}, прочитанные сущности
+     * отсоединяются от контекста, поэтому потребление памяти не зависит от размера результата.
+     * Должен вызываться внутри транзакции, поток необходимо закрыть после использования.
      *
-     * @param specification спецификация для выборки сущностей
-     * @param pageable      параметры пагинации
-     * @param attributeNodes        список полей, которые нужно получить
-     * @return срез сущностей
+     * @param specification  спецификация для выборки сущностей
+     * @param sort           сортировка для выборки сущностей
+     * @param attributeNodes список полей, которые нужно получить
+     * @return поток сущностей
      */
-    public Slice<E> slice(Specification<E> specification, @NonNull Pageable pageable, List<AttributeNode> attributeNodes) {
-        return slice(specification, pageable, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<E> stream(Specification<E> specification, @NonNull Sort sort, List<AttributeNode> attributeNodes) {
+        return streamEntities(specification, sort, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
     }
 
     /**
-     * Получает срез сущностей по спецификации, имени графа сущности и параметрам пагинации.
+     * Получает поток сущностей по спецификации, сортировке и имени графа сущности.
+     * <p>
+     * Должен вызываться внутри транзакции, поток необходимо закрыть после использования.
      *
      * @param specification   спецификация для выборки сущностей
+     * @param sort            сортировка для выборки сущностей
      * @param entityGraphName имя графа сущности
-     * @param pageable        параметры пагинации
-     * @return срез сущностей
+     * @return поток сущностей
      */
-    public Slice<E> slice(Specification<E> specification, @NonNull Pageable pageable, String entityGraphName) {
-        return slice(specification, pageable, entityGraphFactory.graphByName(entityGraphName));
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<E> stream(Specification<E> specification, @NonNull Sort sort, String entityGraphName) {
+        return streamEntities(specification, sort, entityGraphFactory.graphByName(entityGraphName));
     }
 
     /**
-     * Получение групп данных.
+     * Получает поток сущностей по спецификации и сортировке.
+     * <p>
+     * Должен вызываться внутри транзакции, поток необходимо закрыть после использования.
      *
-     * @param specification спецификация
-     * @param groupParams   поля для группировки
+     * @param specification спецификация для выборки сущностей
+     * @param sort          сортировка для выборки сущностей
+     * @return поток сущностей
+     */
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<E> stream(Specification<E> specification, @NonNull Sort sort) {
+        return streamEntities(specification, sort, null);
+    }
+
+    /**
+     * Получает страницу сущностей по спецификации и параметрам пагинации.
+     *
+     * @param specification спецификация для выборки сущностей
+     * @param pageable      параметры пагинации
+     * @return страница сущностей
+     */
+    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable) {
+        return page(specification, pageable, List.of());
+    }
+
+    /**
+     * Получает страницу сущностей по спецификации, параметрам пагинации и списку полей.
+     *
+     * @param specification спецификация для выборки сущностей
+     * @param pageable      параметры пагинации
+     * @param attributeNodes        список полей, которые нужно получить
+     * @return страница сущностей
+     */
+    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable, List<AttributeNode> attributeNodes) {
+        return page(specification, pageable, attributeNodes, CountStrategy.exact());
+    }
+
+    /**
+     * Получает страницу сущностей по спецификации, имени графа сущности и параметрам пагинации.
+     *
+     * @param specification   спецификация для выборки сущностей
+     * @param entityGraphName имя графа сущности
+     * @param pageable        параметры пагинации
+     * @return страница сущностей
+     */
+    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable, String entityGraphName) {
+        return page(specification, pageable, entityGraphName, CountStrategy.exact());
+    }
+
+    /**
+     * Получает страницу сущностей по спецификации и параметрам пагинации с выбранным способом подсчёта.
+     *
+     * @param specification спецификация для выборки сущностей
+     * @param pageable      параметры пагинации
+     * @param countStrategy способ вычисления общего количества
+     * @return страница сущностей
+     */
+    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable,
+                        @NonNull CountStrategy countStrategy) {
+        return page(specification, pageable, List.of(), countStrategy);
+    }
+
+    /**
+     * Получает страницу сущностей по спецификации, параметрам пагинации и списку полей
+     * с выбранным способом подсчёта.
+     *
+     * @param specification  спецификация для выборки сущностей
+     * @param pageable       параметры пагинации
+     * @param attributeNodes список полей, которые нужно получить
+     * @param countStrategy  способ вычисления общего количества
+     * @return страница сущностей
+     */
+    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable,
+                        List<AttributeNode> attributeNodes, @NonNull CountStrategy countStrategy) {
+        return page(specification, pageable, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass),
+                countStrategy);
+    }
+
+    /**
+     * Получает страницу сущностей по спецификации, имени графа сущности и параметрам пагинации
+     * с выбранным способом подсчёта.
+     *
+     * @param specification   спецификация для выборки сущностей
+     * @param pageable        параметры пагинации
+     * @param entityGraphName имя графа сущности
+     * @param countStrategy   способ вычисления общего количества
+     * @return страница сущностей
+     */
+    public Page<E> page(Specification<E> specification, @NonNull Pageable pageable,
+                        String entityGraphName, @NonNull CountStrategy countStrategy) {
+        return page(specification, pageable, entityGraphFactory.graphByName(entityGraphName), countStrategy);
+    }
+
+    /**
+     * Получает срез сущностей по спецификации и параметрам пагинации.
+     *
+     * @param specification спецификация для выборки сущностей
+     * @param pageable      параметры пагинации
+     * @return срез сущностей
+     */
+    public Slice<E> slice(Specification<E> specification, @NonNull Pageable pageable) {
+        return slice(specification, pageable, List.of());
+    }
+
+    /**
+     * Получает срез сущностей по спецификации, параметрам пагинации и списку полей.
+     *
+     * @param specification спецификация для выборки сущностей
+     * @param pageable      параметры пагинации
+     * @param attributeNodes        список полей, которые нужно получить
+     * @return срез сущностей
+     */
+    public Slice<E> slice(Specification<E> specification, @NonNull Pageable pageable, List<AttributeNode> attributeNodes) {
+        return slice(specification, pageable, entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+    }
+
+    /**
+     * Получает срез сущностей по спецификации, имени графа сущности и параметрам пагинации.
+     *
+     * @param specification   спецификация для выборки сущностей
+     * @param entityGraphName имя графа сущности
+     * @param pageable        параметры пагинации
+     * @return срез сущностей
+     */
+    public Slice<E> slice(Specification<E> specification, @NonNull Pageable pageable, String entityGraphName) {
+        return slice(specification, pageable, entityGraphFactory.graphByName(entityGraphName));
+    }
+
+    /**
+     * Получает окно сущностей, следующих за позицией (keyset-пагинация).
+     * <p>
+     * В отличие от {@link #slice(Specification, Pageable)} не использует смещение: позиция превращается
+     * в условие {@code (поля сортировки, id) > (?, ?)}, поэтому время ответа не зависит от глубины прокрутки.
+     * Идентификатор всегда добавляется в конец сортировки для однозначного порядка.
+     *
+     * @param specification спецификация для выборки сущностей
+     * @param sort          сортировка, поля которой не должны содержать null
+     * @param limit         размер окна
+     * @param position      позиция последней полученной строки, {@link ScrollPosition#keyset()} для первого окна
+     * @return окно сущностей
+     */
+    public Window<E> scroll(Specification<E> specification, @NonNull Sort sort, int limit,
+                            @NonNull KeysetScrollPosition position) {
+        return scroll(specification, sort, limit, position, List.of());
+    }
+
+    /**
+     * Получает окно сущностей, следующих за позицией (keyset-пагинация), и список полей.
+     *
+     * @param specification  спецификация для выборки сущностей
+     * @param sort           сортировка, поля которой не должны содержать null
+     * @param limit          размер окна
+     * @param position       позиция последней полученной строки
+     * @param attributeNodes список полей, которые нужно получить
+     * @return окно сущностей
+     */
+    public Window<E> scroll(Specification<E> specification, @NonNull Sort sort, int limit,
+                            @NonNull KeysetScrollPosition position, List<AttributeNode> attributeNodes) {
+        return scroll(specification, sort, limit, position,
+                entityGraphFactory.graphByAttributeNodes(attributeNodes, entityClass));
+    }
+
+    /**
+     * Получает окно сущностей, следующих за позицией (keyset-пагинация), по имени графа сущности.
+     *
+     * @param specification   спецификация для выборки сущностей
+     * @param sort            сортировка, поля которой не должны содержать null
+     * @param limit           размер окна
+     * @param position        позиция последней полученной строки
+     * @param entityGraphName имя графа сущности
+     * @return окно сущностей
+     */
+    public Window<E> scroll(Specification<E> specification, @NonNull Sort sort, int limit,
+                            @NonNull KeysetScrollPosition position, String entityGraphName) {
+        return scroll(specification, sort, limit, position, entityGraphFactory.graphByName(entityGraphName));
+    }
+
+    /**
+     * Получение групп данных.
+     *
+     * @param specification спецификация
+     * @param groupParams   поля для группировки
      * @param mapper        функция для преобразования данных
      * @param <D>           тип данных
      * @return список данных
@@ -458,6 +1209,274 @@ public class DataFetcher<E, I> {
                               List<GroupParam> groupParams,
                               Function<Map<String, ?>, D> mapper,
                               List<FunctionParams> functionParams) {
+        long start = metrics.start();
+        List<D> result = fetchGroups(specification, pageable, groupParams, mapper, functionParams);
+        record("groups", null, start, result.size());
+        return result;
+    }
+
+    /**
+     * Группирует сущности и преобразует строки через переиспользуемое представление {@link GroupRow}.
+     * <p>
+     * В отличие от {@code groups}, строка не копируется в {@code Map}: псевдонимы сопоставляются
+     * индексам один раз на запрос, а преобразователь читает значения по индексу или псевдониму.
+     * Кэш результатов и объединение одинаковых запросов к этому методу не применяются.
+     *
+     * @param specification  спецификация
+     * @param pageable       пагинация и сортировка групп
+     * @param groupParams    поля группировки
+     * @param functionParams агрегатные функции
+     * @param mapper         преобразование строки; строку нельзя сохранять после возврата
+     * @return преобразованные строки
+     */
+    public <D> List<D> mapGroups(Specification<E> specification,
+                                 @NonNull Pageable pageable,
+                                 @NonNull List<GroupParam> groupParams,
+                                 @NonNull List<FunctionParams> functionParams,
+                                 @NonNull Function<GroupRow, D> mapper) {
+        long start = metrics.start();
+        val query = groupsQuery(specification, pageable, groupParams, functionParams);
+        val row = new GroupRow(query.getSelection().getCompoundSelectionItems(), functionParams);
+        val tuples = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        List<D> result = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            result.add(mapper.apply(row.reset(tuple)));
+        }
+        record("mapGroups", null, start, result.size());
+        return result;
+    }
+
+    /**
+     * Группирует сущности без пагинации и преобразует строки через {@link GroupRow}.
+     *
+     * @param specification  спецификация
+     * @param groupParams    поля группировки
+     * @param functionParams агрегатные функции
+     * @param mapper         преобразование строки; строку нельзя сохранять после возврата
+     * @param <D>            тип данных
+     * @return преобразованные строки всех групп
+     */
+    public <D> List<D> mapGroups(Specification<E> specification,
+                                 @NonNull List<GroupParam> groupParams,
+                                 @NonNull List<FunctionParams> functionParams,
+                                 @NonNull Function<GroupRow, D> mapper) {
+        return mapGroups(specification, DEFAULT_PAGE, groupParams, functionParams, mapper);
+    }
+
+    /**
+     * Получает поток групп без материализации всего результата.
+     * <p>
+     * Строки читаются через серверный курсор порциями по {@link #fetchSize(int)}, преобразователи
+     * агрегатных функций и {@code mapper} применяются к каждой строке по мере чтения, поэтому в памяти
+     * находится не больше одной порции. Должен вызываться внутри транзакции,
+     * поток необходимо закрыть после использования.
+     *
+     * @param specification  спецификация
+     * @param sort           сортировка групп
+     * @param groupParams    поля группировки
+     * @param mapper         преобразование строки результата
+     * @param functionParams агрегатные функции
+     * @return поток групп
+     */
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public <D> Stream<D> streamGroups(Specification<E> specification,
+                                      @NonNull Sort sort,
+                                      @NonNull List<GroupParam> groupParams,
+                                      @NonNull Function<Map<String, ?>, D> mapper,
+                                      @NonNull List<FunctionParams> functionParams) {
+        return cursor(groupsQuery(specification, Pageable.unpaged(sort), groupParams, functionParams))
+                .map(tuple -> mapper.apply(groupMap(tuple, groupParams, functionParams)));
+    }
+
+    /**
+     * Обходит группы через серверный курсор, передавая каждую строку в {@code action}
+     * через переиспользуемое представление {@link GroupRow}, без промежуточных {@code Map}.
+     * <p>
+     * Строки читаются порциями по {@link #fetchSize(int)}, курсор закрывается по завершении обхода.
+     * Должен вызываться внутри транзакции.
+     *
+     * @param specification  спецификация
+     * @param sort           сортировка групп
+     * @param groupParams    поля группировки
+     * @param functionParams агрегатные функции
+     * @param action         обработчик строки; строку нельзя сохранять после возврата
+     * @return количество обработанных групп
+     */
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public long forEachGroup(Specification<E> specification,
+                             @NonNull Sort sort,
+                             @NonNull List<GroupParam> groupParams,
+                             @NonNull List<FunctionParams> functionParams,
+                             @NonNull Consumer<GroupRow> action) {
+        long start = metrics.start();
+        val query = groupsQuery(specification, Pageable.unpaged(sort), groupParams, functionParams);
+        val row = new GroupRow(query.getSelection().getCompoundSelectionItems(), functionParams);
+        long count = 0;
+        try (val tuples = cursor(query)) {
+            for (Iterator<Tuple> iterator = tuples.iterator(); iterator.hasNext(); count++) {
+                action.accept(row.reset(iterator.next()));
+            }
+        }
+        record("forEachGroup", null, start, (int) Math.min(count, Integer.MAX_VALUE));
+        return count;
+    }
+
+    private Stream<Tuple> cursor(CriteriaQuery<Tuple> query) {
+        return entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    /**
+     * Группирует сущности по каждому префиксу полей группировки одним запросом
+     * (например, регион → регион и город → регион, город и магазин, плюс общий итог).
+     * <p>
+     * На PostgreSQL выполняется {@code group by rollup(...)}, на других СУБД — объединение
+     * запросов уровней через {@code union all}. Каждая строка помечена уровнем, см. {@link GroupLevel}.
+     * Поддерживаются только итоги по префиксам полей: {@code cube} и произвольные {@code grouping sets}
+     * не реализованы, такие наборы можно получить несколькими вызовами {@code groups}.
+     *
+     * @param specification  спецификация
+     * @param groupParams    поля группировки от старшего к младшему
+     * @param mapper         преобразование строки результата
+     * @param functionParams агрегатные функции
+     * @return строки всех уровней: промежуточный итог следует за своими детальными строками, общий итог — последний
+     */
+    public <D> List<GroupLevel<D>> rollup(Specification<E> specification,
+                                          @NonNull List<GroupParam> groupParams,
+                                          @NonNull Function<Map<String, ?>, D> mapper,
+                                          @NonNull List<FunctionParams> functionParams) {
+        Assert.notEmpty(groupParams, "Не указаны поля группировки");
+        long start = metrics.start();
+        List<GroupLevel<D>> result = rollupQuery().execute(entityClass, specification, groupParams, functionParams)
+                .stream()
+                .map(row -> new GroupLevel<>(row.level(), mapper.apply(row.value())))
+                .toList();
+        record("rollup", null, start, result.size());
+        return result;
+    }
+
+    /**
+     * Группирует сущности по каждому префиксу полей группировки с одной агрегатной функцией.
+     *
+     * @param specification  спецификация
+     * @param groupParams    поля группировки от старшего к младшему
+     * @param mapper         преобразование строки результата
+     * @param functionParams агрегатная функция
+     * @param <D>            тип данных
+     * @return строки всех уровней в порядке, описанном в {@link #rollup(Specification, List, Function, List)}
+     */
+    public <D> List<GroupLevel<D>> rollup(Specification<E> specification,
+                                          @NonNull List<GroupParam> groupParams,
+                                          @NonNull Function<Map<String, ?>, D> mapper,
+                                          @NonNull FunctionParams functionParams) {
+        return rollup(specification, groupParams, mapper, List.of(functionParams));
+    }
+
+    private Page<E> page(Specification<E> specification, Pageable pageable, EntityGraph<?> graph,
+                         CountStrategy countStrategy) {
+        long start = metrics.start();
+        Page<E> page = resultCache == null || !shareable(entityManager)
+                ? fetchPage(specification, pageable, graph, countStrategy)
+                : resultCache.get(new ResultCache.Key("page", fingerprint(specification), Arrays.asList(
+                        pageable, graphKey(graph), countStrategy.getType(), countStrategy.getCap()
+                )), () -> fetchPage(specification, pageable, graph, countStrategy));
+        record("page", graph, start, page.getNumberOfElements());
+        return page;
+    }
+
+    private Slice<E> slice(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
+        long start = metrics.start();
+        Slice<E> slice = resultCache == null || !shareable(entityManager)
+                ? fetchSlice(specification, pageable, graph)
+                : resultCache.get(new ResultCache.Key("slice", fingerprint(specification), Arrays.asList(
+                        pageable, graphKey(graph)
+                )), () -> fetchSlice(specification, pageable, graph));
+        record("slice", graph, start, slice.getNumberOfElements());
+        return slice;
+    }
+
+    private List<E> list(Specification<E> specification, Sort sort, EntityGraph<?> graph) {
+        long start = metrics.start();
+        List<E> result = fetchEntities(specification, sort, graph);
+        record("list", graph, start, result.size());
+        return result;
+    }
+
+    private Optional<E> one(Specification<E> specification, EntityGraph<?> graph) {
+        long start = metrics.start();
+        Optional<E> result = fetchOne(specification, graph);
+        record("one", graph, start, result.isPresent() ? 1 : 0);
+        return result;
+    }
+
+    private QueryFingerprint fingerprint(Specification<E> specification) {
+        val cb = entityManager.getCriteriaBuilder();
+        val query = cb.createQuery(entityClass);
+        val root = query.from(entityClass);
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return QueryFingerprint.of(query.select(root));
+    }
+
+    private void record(String operation, EntityGraph<?> graph, long start, int rows) {
+        if (metrics != FetchMetrics.NOOP) {
+            recordOperation(operation, graphTag(graph), start, rows);
+        }
+    }
+
+    private void recordOperation(String operation, String graphTag, long start, int rows) {
+        if (metrics != FetchMetrics.NOOP) {
+            metrics.operation(entityClass, operation, graphTag, start);
+            metrics.rows(entityClass, operation, rows);
+        }
+    }
+
+    /**
+     * Значение тега графа в метриках: имя графа из сопоставления или общая метка для графов из дерева полей,
+     * чтобы количество различных значений тега не росло вместе с количеством форм выборки.
+     */
+    private static String graphTag(EntityGraph<?> graph) {
+        if (graph == null) {
+            return NO_GRAPH;
+        }
+        if (StringUtils.hasText(graph.getName())) {
+            return graph.getName();
+        }
+        return graph.getAttributeNodes().isEmpty() ? NO_GRAPH : DYNAMIC_GRAPH;
+    }
+
+    private <D> List<D> fetchGroups(Specification<E> specification,
+                                    Pageable pageable,
+                                    List<GroupParam> groupParams,
+                                    Function<Map<String, ?>, D> mapper,
+                                    List<FunctionParams> functionParams) {
+        val query = groupsQuery(specification, pageable, groupParams, functionParams);
+        Supplier<List<Map<String, Object>>> loader = () -> groupRows(query, pageable, groupParams, functionParams);
+        List<Map<String, Object>> rows;
+        if (resultCache == null && inFlightQueries == null || !shareable(entityManager)) {
+            rows = loader.get();
+        } else {
+            val key = new ResultCache.Key("groups", QueryFingerprint.of(query), Arrays.asList(
+                    pageable.getOffset(),
+                    pageable.getPageSize(),
+                    functionParams.stream().map(FunctionParams::getMapper).toList()
+            ));
+            rows = resultCache != null ? resultCache.get(key, loader) : coalesced(key, loader);
+        }
+        return mapRows(rows, mapper);
+    }
+
+    private CriteriaQuery<Tuple> groupsQuery(Specification<E> specification,
+                                             Pageable pageable,
+                                             List<GroupParam> groupParams,
+                                             List<FunctionParams> functionParams) {
         val cb = entityManager.getCriteriaBuilder();
         val query = cb.createTupleQuery();
         val root = query.from(entityClass);
@@ -499,55 +1518,250 @@ public class DataFetcher<E, I> {
         query.multiselect(selectPaths)
                 .groupBy(groupByPaths)
                 .orderBy(orders);
-        return entityManager.createQuery(query)
+        return query;
+    }
+
+    private List<Map<String, Object>> groupRows(CriteriaQuery<Tuple> query,
+                                                Pageable pageable,
+                                                List<GroupParam> groupParams,
+                                                List<FunctionParams> functionParams) {
+        val tuples = entityManager.createQuery(query)
                 .setFirstResult((int) pageable.getOffset())
                 .setMaxResults(pageable.getPageSize())
-                .getResultList()
-                .stream()
-                .map(tuple -> {
-                    Map<String, Object> map = new HashMap<>();
-                    for (var groupParam : groupParams) {
-                        map.put(groupParam.getAlias(), tuple.get(groupParam.getAlias()));
-                    }
+                .getResultList();
+        return mapRows(tuples, tuple -> groupMap(tuple, groupParams, functionParams));
+    }
 
-                    // Конвертируем результат аггрегации в ожидаемый тип
-                    for (var functionParam : functionParams) {
-                        val object = functionParam.getMapper().apply(tuple.get(functionParam.getAlias()));
-                        map.put(functionParam.getAlias(), object);
-                    }
-                    return map;
-                })
-                .map(mapper)
-                .toList();
+    /**
+     * Собирает строку группировки: значения полей группировки и преобразованные результаты агрегатов по псевдонимам.
+     */
+    static Map<String, Object> groupMap(Tuple tuple,
+                                        List<GroupParam> groupParams,
+                                        List<FunctionParams> functionParams) {
+        Map<String, Object> map = new HashMap<>();
+        for (var groupParam : groupParams) {
+            map.put(groupParam.getAlias(), tuple.get(groupParam.getAlias()));
+        }
+
+        // Конвертируем результат аггрегации в ожидаемый тип
+        for (var functionParam : functionParams) {
+            val object = functionParam.getMapper().apply(tuple.get(functionParam.getAlias()));
+            map.put(functionParam.getAlias(), object);
+        }
+        return map;
     }
 
-    private Page<E> page(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
-        val total = total(specification);
+    private Page<E> fetchPage(Specification<E> specification, Pageable pageable, EntityGraph<?> graph,
+                              CountStrategy countStrategy) {
+        if (countStrategy.getType() == CountStrategy.Type.SKIP_IF_LAST_PAGE) {
+            return PageableExecutionUtils.getPage(pageContent(specification, pageable, graph), pageable, () -> {
+                long start = metrics.start();
+                long total = total(specification);
+                metrics.phase(entityClass, "count", start);
+                return total;
+            });
+        }
+
+        if (countStrategy.getType() == CountStrategy.Type.WINDOW) {
+            return windowPage(specification, pageable, graph);
+        }
+
+        if (countExecutor != null && countPermits.tryAcquire()) {
+            return concurrentPage(specification, pageable, graph, countStrategy);
+        }
+
+        long countStart = metrics.start();
+        val total = total(entityManager, specification, countStrategy);
+        metrics.phase(entityClass, "count", countStart);
 
-        if (total == 0) {
+        // Оценка планировщика может быть занижена, поэтому пустой результат доверяем только подсчёту
+        if (total == 0 && countStrategy.getType() != CountStrategy.Type.ESTIMATED) {
             return emptyResult(pageable, total);
         }
 
-        List<I> ids = fetchAllIds(specification, pageable);
+        List<E> content = pageContent(specification, pageable, graph);
 
-        if (ids.isEmpty()) {
+        if (content.isEmpty()) {
             return emptyResult(pageable, total);
         }
 
-        Map<I, E> idMap = fetchAllByIds(ids, graph).stream()
-                .collect(Collectors.toMap(idFunction, Function.identity()));
+        return new PageImpl<>(content, pageable, total);
+    }
 
-        List<E> data = ids.stream().map(idMap::get).toList();
+    /**
+     * Получает страницу и общее количество одним запросом с {@code count(*) over()}: без графа или с пустым
+     * графом выбираются сами сущности, иначе — идентификаторы, по которым затем загружаются сущности.
+     * С кэшем сущностей, как и в {@link #directPage}, всегда выбираются идентификаторы, чтобы переиспользовать кэш.
+     * Оконная функция считает строки до {@code distinct}, поэтому при соединениях коллекций
+     * выполняется обычный подсчёт.
+     */
+    private Page<E> windowPage(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
+        long start = metrics.start();
+        val cb = (HibernateCriteriaBuilder) entityManager.getCriteriaBuilder();
+        val query = cb.createTupleQuery();
+        val root = query.from(entityClass);
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        val orders = new ArrayList<Order>();
+        for (Sort.Order order : pageable.getSort()) {
+            Path<Object> path = new PathCalculator<>(root, order.getProperty().split("\\.")).path();
+            orders.add(order.isAscending() ? cb.asc(path) : cb.desc(path));
+        }
+        boolean entities = entityCache == null && (graph == null || graph.getAttributeNodes().isEmpty());
+        query.multiselect(entities ? root : root.get(idFieldName), cb.count(root, cb.createWindow()));
+        if (QueryJoins.multipliesRows(query)) {
+            return fetchPage(specification, pageable, graph, CountStrategy.exact());
+        }
+        query.orderBy(orders);
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        metrics.phase(entityClass, "window", start);
 
-        return new PageImpl<>(data, pageable, total);
+        if (rows.isEmpty()) {
+            // За концом выборки оконная функция не возвращает ни одной строки
+            return emptyResult(pageable, pageable.getOffset() == 0 ? 0 : total(specification));
+        }
+
+        long total = rows.getFirst().get(1, Long.class);
+        List<E> content;
+        if (entities) {
+            content = rows.stream().map(row -> (E) row.get(0)).toList();
+            content.forEach(entityManager::detach);
+        } else {
+            content = pageEntities(rows.stream().map(row -> (I) row.get(0)).toList(), graph);
+        }
+        return new PageImpl<>(content, pageable, total);
     }
 
-    private Slice<E> slice(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
-        List<I> ids = fetchAllIds(specification, PageRequest.of(
-                pageable.getPageNumber(),
-                pageable.getPageSize() + 1,
-                pageable.getSort()
-        ));
+    /**
+     * Получает сущности страницы одним запросом, если это возможно, иначе сначала идентификаторы страницы,
+     * затем сущности по ним.
+     */
+    private List<E> pageContent(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
+        val content = directPage(specification, pageable, graph);
+        return content != null ? content : pageEntities(pageIds(specification, pageable), graph);
+    }
+
+    /**
+     * Получает сущности страницы одним запросом {@code order by ... offset ... limit} с графом в подсказке.
+     * Ограничение применимо к сущностям, только если ни граф, ни спецификация не соединяют коллекции:
+     * иначе одна сущность занимает несколько строк, и Hibernate применил бы ограничение в памяти.
+     * С кэшем сущностей страница тоже загружается по идентификаторам, чтобы переиспользовать кэш.
+     *
+     * @return сущности страницы или {@code null}, если нужен запрос идентификаторов
+     */
+    private List<E> directPage(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
+        if (entityCache != null || fetchesCollections(graph)) {
+            return null;
+        }
+        long start = metrics.start();
+        val query = entitiesCriteria(entityManager, specification, pageable.getSort());
+        if (QueryJoins.multipliesRows(query)) {
+            return null;
+        }
+        List<E> entities = withGraph(entityManager.createQuery(query), graph)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        entities.forEach(entityManager::detach);
+        metrics.phase(entityClass, "entities", start);
+        return entities;
+    }
+
+    private boolean fetchesCollections(EntityGraph<?> graph) {
+        return graph != null && QueryJoins.fetchesCollections(graph.getAttributeNodes(),
+                entityManager.getMetamodel().managedType(entityClass));
+    }
+
+    private List<I> pageIds(Specification<E> specification, Pageable pageable) {
+        long start = metrics.start();
+        List<I> ids = ids(specification, pageable);
+        metrics.phase(entityClass, "ids", start);
+        return ids;
+    }
+
+    private List<E> pageEntities(List<I> ids, EntityGraph<?> graph) {
+        long start = metrics.start();
+        List<E> entities = fetchAllByIds(ids, graph);
+        metrics.phase(entityClass, "entities", start);
+        return entities;
+    }
+
+    /**
+     * Получает страницу с подсчётом на отдельном соединении. Вызывающий код уже получил разрешение
+     * {@link #countPermits}, оно освобождается по завершении подсчёта. Подсчёт не отменяется при ошибке
+     * выборки страницы: отменённая до запуска задача не выполнилась бы и не освободила разрешение.
+     */
+    private Page<E> concurrentPage(Specification<E> specification, Pageable pageable, EntityGraph<?> graph,
+                                   CountStrategy countStrategy) {
+        CompletableFuture<Long> totalFuture;
+        try {
+            val separateEntityManager = separateEntityManager();
+            totalFuture = CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            long start = metrics.start();
+                            long total = separateEntityManager.readOnly(em -> total(em, specification, countStrategy));
+                            metrics.phase(entityClass, "count", start);
+                            return total;
+                        } finally {
+                            countPermits.release();
+                        }
+                    },
+                    countExecutor
+            );
+        } catch (RuntimeException e) {
+            countPermits.release();
+            throw e;
+        }
+
+        List<E> content = pageContent(specification, pageable, graph);
+
+        long total = join(totalFuture);
+
+        return content.isEmpty() ? emptyResult(pageable, total) : new PageImpl<>(content, pageable, total);
+    }
+
+    private RollupQuery rollupQuery() {
+        if (rollupQuery == null) {
+            rollupQuery = new RollupQuery(entityManager);
+        }
+        return rollupQuery;
+    }
+
+    private SeparateEntityManager separateEntityManager() {
+        if (separateEntityManager == null) {
+            separateEntityManager = new SeparateEntityManager(entityManager.getEntityManagerFactory());
+        }
+        return separateEntityManager;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Slice<E> fetchSlice(Specification<E> specification, Pageable pageable, EntityGraph<?> graph) {
+        // Лишняя строка за страницей показывает, есть ли следующий срез
+        val lookahead = new LookaheadPageable(pageable);
+        val direct = directPage(specification, lookahead, graph);
+        if (direct != null) {
+            boolean hasNext = direct.size() > pageable.getPageSize();
+            return new SliceImpl<>(hasNext ? direct.subList(0, pageable.getPageSize()) : direct, pageable, hasNext);
+        }
+
+        List<I> ids = ids(specification, lookahead);
 
         boolean hasNext = ids.size() > pageable.getPageSize();
 
@@ -557,24 +1771,225 @@ public class DataFetcher<E, I> {
             return new SliceImpl<>(List.of(), pageable, hasNext);
         }
 
-        Map<I, E> idMap = fetchAllByIds(pageIds, graph).stream()
-                .collect(Collectors.toMap(idFunction, Function.identity()));
+        return new SliceImpl<>(fetchAllByIds(pageIds, graph), pageable, hasNext);
+    }
+
+    private Window<E> scroll(Specification<E> specification, Sort sort, int limit,
+                             KeysetScrollPosition position, EntityGraph<?> graph) {
+        val keysetSort = sort.getOrderFor(idFieldName) == null ? sort.and(Sort.by(ASC, idFieldName)) : sort;
+        val querySort = position.scrollsForward() ? keysetSort : Sort.by(keysetSort.stream()
+                .map(order -> order.with(order.getDirection().isAscending() ? Sort.Direction.DESC : ASC))
+                .toList());
+        val properties = keysetSort.stream().map(Sort.Order::getProperty).toList();
+
+        List<List<String>> fields = new ArrayList<>();
+        fields.add(List.of(idFieldName));
+        List<Integer> columns = new ArrayList<>();
+        for (String property : properties) {
+            if (idFieldName.equals(property)) {
+                columns.add(0);
+            } else {
+                columns.add(fields.size());
+                fields.add(List.of(property.split("\\.")));
+            }
+        }
+
+        List<List<Object>> rows = new ArrayList<>(fields(new FetchParams<E, List<Object>>(
+                Specification.where(specification).and(new KeysetSpecification<>(querySort, position.getKeys())),
+                PageRequest.of(0, limit + 1, querySort),
+                Function.identity(),
+                fields
+        )));
+
+        boolean hasNext = rows.size() > limit;
+        if (hasNext) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+        }
+        if (position.scrollsBackward()) {
+            Collections.reverse(rows);
+        }
+        if (rows.isEmpty()) {
+            return Window.from(List.of(), index -> position, hasNext);
+        }
 
-        List<E> content = pageIds.stream().map(idMap::get).toList();
+        Map<Object, List<Object>> rowsById = new HashMap<>(rows.size() * 2);
+        rows.forEach(row -> rowsById.put(row.getFirst(), row));
+        List<E> content = fetchAllByIds(rows.stream().map(row -> (I) row.getFirst()).toList(), graph);
+        // Сущности, удалённые между запросами, отсутствуют в content: позиции берутся из строк найденных сущностей
+        List<List<Object>> contentRows = content.stream()
+                .map(entity -> rowsById.get(idFunction.apply(entity)))
+                .toList();
 
-        return new SliceImpl<>(content, pageable, hasNext);
+        return Window.from(content, index -> {
+            Map<String, Object> keys = new LinkedHashMap<>();
+            for (int i = 0; i < properties.size(); i++) {
+                keys.put(properties.get(i), contentRows.get(index).get(columns.get(i)));
+            }
+            return ScrollPosition.forward(keys);
+        }, hasNext);
     }
 
+    /**
+     * Загружает сущности порциями не более {@link #idsChunkSize(int)} идентификаторов.
+     * Размер порции дополняется повтором последнего идентификатора до степени двойки, чтобы число
+     * различных текстов запросов (и планов в кэше Hibernate) оставалось логарифмическим.
+     * Результат упорядочен как переданные идентификаторы.
+     */
     private List<E> fetchAllByIds(Collection<I> ids, EntityGraph<?> graph) {
-        return fetchEntities(new In<>(ids, idFieldName), Sort.unsorted(), graph);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<I> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<I, E> idMap = new HashMap<>(distinctIds.size() * 2);
+        List<I> missingIds = distinctIds;
+        val graphKey = graphKey(graph);
+        if (entityCache != null) {
+            missingIds = new ArrayList<>();
+            for (I id : distinctIds) {
+                E cached = entityCache.getIfPresent(new EntityKey(id, graphKey));
+                if (cached == null) {
+                    missingIds.add(id);
+                } else {
+                    idMap.put(id, cached);
+                }
+            }
+        }
+        for (int from = 0; from < missingIds.size(); from += idsChunkSize) {
+            val chunk = missingIds.subList(from, Math.min(from + idsChunkSize, missingIds.size()));
+            metrics.ids(entityClass, chunk.size());
+            for (E entity : fetchEntities(idsSpecification(chunk), Sort.unsorted(), graph)) {
+                I id = idFunction.apply(entity);
+                if (idMap.putIfAbsent(id, entity) == null && entityCache != null) {
+                    entityCache.put(new EntityKey(id, graphKey), entity);
+                }
+            }
+        }
+
+        return distinctIds.stream()
+                .map(idMap::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private Optional<E> oneById(I id, EntityGraph<?> graph) {
+        if (entityCache == null) {
+            return one(new Equal<>(id, idFieldName), graph);
+        }
+        val key = new EntityKey(id, graphKey(graph));
+        E cached = entityCache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<E> result = one(new Equal<>(id, idFieldName), graph);
+        result.ifPresent(entity -> entityCache.put(key, entity));
+        return result;
+    }
+
+    /**
+     * Ключ графа для кэшей сущностей и результатов. Вид графа входит в ключ, чтобы граф из сопоставления
+     * и граф из дерева полей, сигнатура которого совпала с его именем, не делили записи кэша.
+     */
+    static String graphKey(EntityGraph<?> graph) {
+        if (graph == null) {
+            return "";
+        }
+        return graph.getName() != null
+                ? "named:" + graph.getName()
+                : "nodes:" + EntityGraphFactory.signature(graph);
+    }
+
+    private Specification<E> idsSpecification(List<I> ids) {
+        if (arrayIdBinding) {
+            return (root, query, cb) -> {
+                val hcb = (HibernateCriteriaBuilder) cb;
+                Path<Object> idPath = root.get(idFieldName);
+                val array = ids.toArray((Object[]) Array.newInstance(idPath.getJavaType(), ids.size()));
+                return hcb.equal(idPath, hcb.function("any", idPath.getJavaType(), hcb.value(array)));
+            };
+        }
+        return new In<>(padded(ids), idFieldName);
+    }
+
+    static <T> List<T> padded(List<T> values) {
+        if (values.size() < 2) {
+            return values;
+        }
+        int size = Integer.highestOneBit(values.size() - 1) << 1;
+        if (size == values.size()) {
+            return values;
+        }
+        List<T> result = new ArrayList<>(size);
+        result.addAll(values);
+        while (result.size() < size) {
+            result.add(values.getLast());
+        }
+        return result;
     }
 
     private List<E> fetchEntities(Specification<E> spec, Sort sort, EntityGraph<?> graph) {
+        val plan = collectionPlan(graph);
+        List<E> resultList = entitiesQuery(spec, sort, plan == null ? graph : plan.mainGraph()).getResultList();
+
+        if (plan != null) {
+            loadCollections(plan, resultList);
+        }
+
+        resultList.forEach(entityManager::detach);
+
+        return resultList;
+    }
+
+    private CollectionGraphLoader.Plan collectionPlan(EntityGraph<?> graph) {
+        return collectionGraphLoader == null || graph == null ? null : collectionGraphLoader.plan(graph, entityClass);
+    }
+
+    private void loadCollections(CollectionGraphLoader.Plan plan, List<E> entities) {
+        if (!entities.isEmpty()) {
+            List<I> ids = entities.stream().map(idFunction).distinct().toList();
+            collectionGraphLoader.load(plan, entityClass, idFieldName, ids, idsChunkSize);
+        }
+    }
+
+    private Stream<E> streamEntities(Specification<E> spec, Sort sort, EntityGraph<?> graph) {
+        val stableSort = sort.getOrderFor(idFieldName) == null ? sort.and(Sort.by(ASC, idFieldName)) : sort;
+        val session = entityManager.unwrap(Session.class);
+        return entitiesQuery(spec, stableSort, graph)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()
+                .map(entity -> {
+                    // Отсоединяем прочитанные сущности, чтобы контекст не рос вместе с результатом.
+                    // Контекст принадлежит транзакции вызывающего кода, поэтому он не очищается целиком,
+                    // а изменяемые сущности, загруженные до потока, остаются в нём вместе с изменениями
+                    if (session.isReadOnly(entity)) {
+                        entityManager.detach(entity);
+                    }
+                    return entity;
+                });
+    }
+
+    private TypedQuery<E> entitiesQuery(Specification<E> spec, Sort sort, EntityGraph<?> graph) {
+        return entitiesQuery(entityManager, spec, sort, graph);
+    }
+
+    private TypedQuery<E> entitiesQuery(EntityManager entityManager, Specification<E> spec, Sort sort,
+                                        EntityGraph<?> graph) {
+        return withGraph(entityManager.createQuery(entitiesCriteria(entityManager, spec, sort)), graph);
+    }
+
+    private static <T> TypedQuery<T> withGraph(TypedQuery<T> typedQuery, EntityGraph<?> graph) {
+        if (graph != null) {
+            typedQuery.setHint(GraphSemantic.FETCH.getJakartaHintName(), graph);
+        }
+        return typedQuery;
+    }
+
+    private CriteriaQuery<E> entitiesCriteria(EntityManager entityManager, Specification<E> spec, Sort sort) {
         val cb = entityManager.getCriteriaBuilder();
         val query = cb.createQuery(entityClass);
         val root = query.from(entityClass);
 
-        Predicate predicate = spec.toPredicate(root, query, cb);
+        Predicate predicate = spec == null ? null : spec.toPredicate(root, query, cb);
 
         if (predicate != null) {
             query.where(predicate);
@@ -588,36 +2003,264 @@ public class DataFetcher<E, I> {
                 .toList();
         query.orderBy(orders);
 
-        val typedQuery = entityManager.createQuery(query);
+        return query;
+    }
 
-        if (graph != null) {
-            typedQuery.setHint(GraphSemantic.FETCH.getJakartaHintName(), graph);
+    private List<I> ids(Specification<E> specification, Pageable pageable) {
+        return fields(
+                new FetchParams<>(
+                        specification,
+                        pageable,
+                        list -> (I) list.getFirst(),
+                        List.of(List.of(idFieldName))
+                )
+        );
+    }
+
+    private <D> List<D> fields(FetchParams<E, D> params) {
+        return rows(params).stream().map(params::map).toList();
+    }
+
+    private <D> List<List<Object>> rows(FetchParams<E, D> params) {
+        val fields = params.fields();
+        return fieldsQuery(params)
+                .getResultList()
+                .stream()
+                .map(tuple -> row(tuple, fields.size()))
+                .toList();
+    }
+
+    /**
+     * Преобразует строки последовательно или, начиная с порога {@link #parallelMapping}, параллельно
+     * в заданном пуле с сохранением порядка.
+     */
+    private <T, R> List<R> mapRows(List<T> rows, Function<? super T, ? extends R> mapper) {
+        if (mappingPool == null || rows.size() < mappingThreshold) {
+            return rows.stream().<R>map(mapper).toList();
         }
+        // Параллельный поток, запущенный из задачи пула, выполняется в этом пуле
+        return mappingPool.submit(() -> rows.parallelStream().<R>map(mapper).toList()).join();
+    }
 
-        List<E> resultList = typedQuery.getResultList();
+    private <D> TypedQuery<Tuple> fieldsQuery(FetchParams<E, D> params) {
+        return fieldsQuery(entityManager, params);
+    }
 
-        resultList.forEach(entityManager::detach);
+    private <D> TypedQuery<Tuple> fieldsQuery(EntityManager entityManager, FetchParams<E, D> params) {
+        val cb = entityManager.getCriteriaBuilder();
+        val query = cb.createTupleQuery();
+        val root = query.from(entityClass);
+        if (params.specification() != null) {
+            val predicate = params.specification().toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        val orders = new ArrayList<Order>();
+        val selectPaths = new LinkedHashSet<Path<?>>();
+        for (List<String> path : params.fields()) {
+            Path<Object> objectPath = root.get(path.getFirst());
+            if (path.size() > 1) {
+                for (int i = 1; i < path.size(); i++) {
+                    objectPath = objectPath.get(path.get(i));
+                }
+            }
+            selectPaths.add(objectPath);
+        }
+        val pageable = params.pageable();
+        for (Sort.Order order : pageable.getSort()) {
+            var path = new PathCalculator<>(root, order.getProperty().split("\\.")).path();
+            orders.add(ASC == order.getDirection() ? cb.asc(path) : cb.desc(path));
+            selectPaths.add(path);
+        }
+        query.select(cb.tuple(selectPaths.toArray(new Selection<?>[]{})));
+        query.distinct(distinctFields(query, selectPaths));
+        query.orderBy(orders);
 
-        return resultList;
+        return entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize());
+    }
+
+    /**
+     * Нужен ли {@code distinct} выборке полей. Выбранные поля, как правило, не уникальны, поэтому значения
+     * повторяются, и {@code distinct} снимается только там, где строки заведомо уникальны: среди полей есть
+     * идентификатор корня, а спецификация не соединяет коллекции. Тогда он лишь мешает читать первые строки
+     * из индекса. Явно заданный спецификацией {@code distinct} сохраняется.
+     */
+    private boolean distinctFields(CriteriaQuery<?> query, Collection<Path<?>> paths) {
+        return query.isDistinct() || QueryJoins.multipliesRows(query) || paths.stream().noneMatch(this::isRootId);
+    }
+
+    private boolean isRootId(Path<?> path) {
+        return path.getParentPath() instanceof Root<?>
+                && path.getModel() instanceof Attribute<?, ?> attribute
+                && attribute.getName().equals(idFieldName);
+    }
+
+    private static List<Object> row(Tuple tuple, int size) {
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(tuple.get(i));
+        }
+        return list;
+    }
+
+    private long total(EntityManager entityManager, Specification<E> specification, CountStrategy countStrategy) {
+        if (countCache == null && inFlightQueries == null || !shareable(entityManager)) {
+            return countTotal(entityManager, specification, countStrategy);
+        }
+        // Версия читается до подсчёта: изменение во время подсчёта оставит результат под устаревшим ключом
+        val key = new ResultCache.Key("total", fingerprint(specification), Arrays.asList(
+                countStrategy.getType(), countStrategy.getCap(), countCache == null ? 0 : dataVersion()
+        ));
+        if (countCache == null) {
+            return coalesced(key, () -> countTotal(entityManager, specification, countStrategy));
+        }
+        Long cached = countCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long total = inFlightQueries == null
+                ? countTotal(entityManager, specification, countStrategy)
+                : coalesced(key, () -> countTotal(entityManager, specification, countStrategy));
+        countCache.put(key, total);
+        return total;
+    }
+
+    private long dataVersion() {
+        long version = entityVersions.current(entityClass);
+        for (Class<?> dependency : countDependencies) {
+            version += entityVersions.current(dependency);
+        }
+        return version;
+    }
+
+    private long countTotal(EntityManager entityManager, Specification<E> specification,
+                            CountStrategy countStrategy) {
+        return switch (countStrategy.getType()) {
+            case CAPPED -> cappedTotal(entityManager, specification, countStrategy.getCap());
+            case ESTIMATED -> estimatedTotal(entityManager, specification);
+            default -> total(entityManager, specification);
+        };
+    }
+
+    /**
+     * Считает не более {@code cap + 1} строк запросом {@code select count(*) from (select id ... limit cap + 1)}:
+     * подзапрос без сортировки останавливается на первых подходящих строках, а клиенту возвращается одно число.
+     */
+    @SuppressWarnings("unchecked")
+    private long cappedTotal(EntityManager entityManager, Specification<E> specification, int cap) {
+        val cb = (HibernateCriteriaBuilder) entityManager.getCriteriaBuilder();
+        val query = cb.createQuery(Long.class);
+        val rows = (JpaSubQuery<Object>) query.subquery(Object.class);
+        val root = rows.from(entityClass);
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            rows.where(predicate);
+        }
+        Path<Object> id = root.get(idFieldName);
+        id.alias(idFieldName);
+        rows.select(id)
+                .distinct(query.isDistinct() || QueryJoins.multipliesRows(rows))
+                .fetch(cap + 1);
+        query.from(rows);
+        query.select(cb.count());
+        return entityManager.createQuery(query).getSingleResult();
     }
 
     private long total(Specification<E> specification) {
+        return total(entityManager, specification, CountStrategy.exact());
+    }
+
+    /**
+     * Можно ли разделять результат запроса с другими транзакциями. Запрос сбрасывает несохранённые изменения
+     * контекста и видит их, поэтому при таких изменениях результат остаётся только у вызывающего.
+     * Вне транзакции у каждого вызова свой контекст без изменений.
+     */
+    private static boolean shareable(EntityManager entityManager) {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || !entityManager.unwrap(Session.class).isDirty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesced(ResultCache.Key key, Supplier<T> loader) {
+        return (T) inFlightQueries.execute(key, loader);
+    }
+
+    private long total(EntityManager entityManager, Specification<E> specification) {
         val cb = entityManager.getCriteriaBuilder();
         val query = cb.createQuery(Long.class);
         val root = query.from(entityClass);
-        val predicate = specification.toPredicate(root, query, cb);
-
-        query.distinct(true);
-        query.select(cb.countDistinct(root));
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
 
         if (predicate != null) {
             query.where(predicate);
         }
 
+        if (QueryJoins.multipliesRows(query)) {
+            query.distinct(true);
+            query.select(cb.countDistinct(root));
+        } else {
+            query.select(cb.count(root));
+        }
+
         return entityManager.createQuery(query).getSingleResult();
     }
 
-    private Optional<E> one(Specification<E> specification, EntityGraph<?> entityGraph) {
+    /**
+     * Создаёт запрос из копии общего дерева критериев: Hibernate может изменять дерево при создании запроса
+     * и привязке параметров, поэтому копирование включается независимо от настройки
+     * {@code hibernate.criteria.copy_tree}.
+     */
+    private <T> TypedQuery<T> preparedQuery(CriteriaQuery<T> criteria, Map<String, ?> parameters) {
+        val session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        boolean copyTree = session.isCriteriaCopyTreeEnabled();
+        session.setCriteriaCopyTreeEnabled(true);
+        TypedQuery<T> query;
+        try {
+            query = entityManager.createQuery(criteria);
+        } finally {
+            session.setCriteriaCopyTreeEnabled(copyTree);
+        }
+        parameters.forEach(query::setParameter);
+        return query;
+    }
+
+    private static void addFetches(FetchParent<?, ?> parent, List<AttributeNode> attributeNodes) {
+        if (attributeNodes == null) {
+            return;
+        }
+        for (AttributeNode attributeNode : attributeNodes) {
+            addFetches(parent.fetch(attributeNode.getAttribute(), JoinType.LEFT), attributeNode.getSubGraph());
+        }
+    }
+
+    /**
+     * Оценивает количество по плану запроса идентификаторов, при недоступной оценке считает точно.
+     * План оценивает строки результата, а при соединениях коллекций одна сущность занимает несколько строк,
+     * поэтому такие запросы сразу считаются точно.
+     */
+    private long estimatedTotal(EntityManager entityManager, Specification<E> specification) {
+        val cb = entityManager.getCriteriaBuilder();
+        val query = cb.createQuery(Object.class);
+        val root = query.from(entityClass);
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+
+        query.select(root.get(idFieldName));
+
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        if (QueryJoins.multipliesRows(query)) {
+            return total(entityManager, specification);
+        }
+        return rowCountEstimator.estimate(entityManager, entityManager.createQuery(query))
+                .orElseGet(() -> total(entityManager, specification));
+    }
+
+    private Optional<E> fetchOne(Specification<E> specification, EntityGraph<?> entityGraph) {
         val cb = entityManager.getCriteriaBuilder();
         val query = cb.createQuery(entityClass);
         val root = query.from(entityClass);
@@ -629,13 +2272,19 @@ public class DataFetcher<E, I> {
         }
 
         val typedQuery = entityManager.createQuery(query);
+        val plan = collectionPlan(entityGraph);
+        val graph = plan == null ? entityGraph : plan.mainGraph();
 
-        if (entityGraph != null) {
-            typedQuery.setHint(GraphSemantic.FETCH.getJakartaHintName(), entityGraph);
+        if (graph != null) {
+            typedQuery.setHint(GraphSemantic.FETCH.getJakartaHintName(), graph);
         }
 
         Optional<E> optional = typedQuery.getResultStream().findFirst();
 
+        if (plan != null) {
+            optional.ifPresent(entity -> loadCollections(plan, List.of(entity)));
+        }
+
         optional.ifPresent(entityManager::detach);
 
         return optional;
@@ -644,4 +2293,59 @@ public class DataFetcher<E, I> {
     private PageImpl<E> emptyResult(Pageable pageable, long total) {
         return new PageImpl<>(List.of(), PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()), total);
     }
+
+    private record EntityKey(Object id, String graph) {
+    }
+
+    /**
+     * Страница с тем же смещением, но на одну строку длиннее. {@code PageRequest.of(page, size + 1)}
+     * для этого не подходит: смещение {@code page * (size + 1)} пропускает строки начиная со второй страницы.
+     */
+    private record LookaheadPageable(Pageable pageable) implements Pageable {
+
+        @Override
+        public int getPageNumber() {
+            return pageable.getPageNumber();
+        }
+
+        @Override
+        public int getPageSize() {
+            return pageable.getPageSize() + 1;
+        }
+
+        @Override
+        public long getOffset() {
+            return pageable.getOffset();
+        }
+
+        @Override
+        public Sort getSort() {
+            return pageable.getSort();
+        }
+
+        @Override
+        public Pageable next() {
+            return pageable.next();
+        }
+
+        @Override
+        public Pageable previousOrFirst() {
+            return pageable.previousOrFirst();
+        }
+
+        @Override
+        public Pageable first() {
+            return pageable.first();
+        }
+
+        @Override
+        public Pageable withPage(int pageNumber) {
+            return pageable.withPage(pageNumber);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return pageable.hasPrevious();
+        }
+    }
 }
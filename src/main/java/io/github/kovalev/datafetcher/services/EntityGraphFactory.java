@@ -1,23 +1,45 @@
 package io.github.kovalev.datafetcher.services;
 
 import io.github.kovalev.datafetcher.utils.AttributeNode;
+import io.github.kovalev.datafetcher.utils.LruCache;
 import jakarta.persistence.EntityGraph;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Subgraph;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.hibernate.graph.CannotContainSubGraphException;
+import org.hibernate.graph.RootGraph;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.StringJoiner;
 
 @Slf4j
-@RequiredArgsConstructor
 public class EntityGraphFactory {
 
+    private static final int DEFAULT_CACHE_SIZE = 512;
+
     private final EntityManager entityManager;
+    private volatile LruCache<String, EntityGraph<?>> graphCache = new LruCache<>(DEFAULT_CACHE_SIZE);
+
+    public EntityGraphFactory(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Устанавливает максимальное количество графов в кэше. Значение 0 отключает кэширование.
+     * Кэш заменяется новым пустым, уже построенные графы не переносятся.
+     *
+     * @param cacheSize максимальное количество графов
+     * @return этот же экземпляр
+     */
+    public EntityGraphFactory cacheSize(int cacheSize) {
+        this.graphCache = new LruCache<>(cacheSize);
+        return this;
+    }
 
     public EntityGraph<?> graphByName(String graphName) {
         if (StringUtils.hasText(graphName)) {
@@ -27,9 +49,85 @@ public class EntityGraphFactory {
         return null;
     }
 
+    /**
+     * Возвращает граф сущности по дереву полей.
+     * <p>
+     * Построенные графы неизменяемы и кэшируются по классу сущности и сигнатуре дерева полей,
+     * поэтому повторные запросы с той же формой выборки не строят граф заново.
+     *
+     * @param attributeNodes дерево полей
+     * @param entityClass    класс сущности
+     * @return граф сущности
+     */
     public EntityGraph<?> graphByAttributeNodes(List<AttributeNode> attributeNodes, Class<?> entityClass) {
+        return graphCache.get(entityClass.getName() + ":" + signature(attributeNodes),
+                key -> buildGraph(attributeNodes, entityClass));
+    }
+
+    /**
+     * Возвращает каноническую сигнатуру дерева полей, не зависящую от порядка полей,
+     * например {@code comments,posts(comments)}.
+     *
+     * @param attributeNodes дерево полей
+     * @return сигнатура
+     */
+    public static String signature(List<AttributeNode> attributeNodes) {
+        if (CollectionUtils.isEmpty(attributeNodes)) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(",");
+        attributeNodes.stream()
+                .map(node -> CollectionUtils.isEmpty(node.getSubGraph())
+                        ? node.getAttribute()
+                        : node.getAttribute() + "(" + signature(node.getSubGraph()) + ")")
+                .sorted(Comparator.naturalOrder())
+                .forEach(joiner::add);
+        return joiner.toString();
+    }
+
+    /**
+     * Возвращает сигнатуру дерева полей графа сущности в формате {@link #signature(List)}.
+     *
+     * @param graph граф сущности
+     * @return сигнатура
+     */
+    public static String signature(EntityGraph<?> graph) {
+        return nodesSignature(graph.getAttributeNodes());
+    }
+
+    private static String nodesSignature(List<? extends jakarta.persistence.AttributeNode<?>> nodes) {
+        StringJoiner joiner = new StringJoiner(",");
+        nodes.stream()
+                .map(node -> {
+                    List<jakarta.persistence.AttributeNode<?>> children = new ArrayList<>();
+                    for (Subgraph<?> subgraph : node.getSubgraphs().values()) {
+                        children.addAll(subgraph.getAttributeNodes());
+                    }
+                    return children.isEmpty()
+                            ? node.getAttributeName()
+                            : node.getAttributeName() + "(" + nodesSignature(children) + ")";
+                })
+                .sorted(Comparator.naturalOrder())
+                .forEach(joiner::add);
+        return joiner.toString();
+    }
+
+    public long cacheHits() {
+        return graphCache.hits();
+    }
+
+    public long cacheMisses() {
+        return graphCache.misses();
+    }
+
+    EntityGraph<?> buildGraph(List<AttributeNode> attributeNodes, Class<?> entityClass) {
         EntityGraph<?> graph = entityManager.createEntityGraph(entityClass);
         fillSubgraphs(attributeNodes, graph);
+        if (graph instanceof RootGraph<?> rootGraph) {
+            // Неизменяемая копия безопасна для совместного использования между потоками.
+            // Имя не задаётся: имена есть только у графов, объявленных в сопоставлении
+            return rootGraph.makeRootGraph(null, false);
+        }
         return graph;
     }
 
@@ -0,0 +1,113 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.val;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.lang.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии данных по классам сущностей для точной инвалидации кэшированных подсчётов.
+ * <p>
+ * Версия класса увеличивается при каждом изменении его данных: вызовом {@link #bump} из кода записи
+ * или автоматически после фиксации транзакции, если экземпляр подключён к фабрике через {@link #bindTo}.
+ * Кэш подсчётов {@link DataFetcher#countCache} включает версию в ключ, поэтому после изменения
+ * подсчёт выполняется заново, а до изменения переиспользуется.
+ * Массовые операции ({@code update}/{@code delete} запросом, JDBC) событий Hibernate не порождают,
+ * после них версию нужно увеличить явно.
+ */
+public final class EntityVersions {
+
+    private final ConcurrentMap<Class<?>, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Возвращает текущую версию данных класса сущности.
+     *
+     * @param entityClass класс сущности
+     * @return версия
+     */
+    public long current(@NonNull Class<?> entityClass) {
+        val version = versions.get(entityClass);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Отмечает изменение данных класса сущности и всех его суперклассов,
+     * чтобы инвалидировались и подсчёты по базовым классам иерархии наследования.
+     *
+     * @param entityClass класс изменённой сущности
+     */
+    public void bump(@NonNull Class<?> entityClass) {
+        for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            versions.computeIfAbsent(type, key -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Подписывается на события фиксации вставки, изменения и удаления сущностей фабрики.
+     *
+     * @param entityManagerFactory фабрика Hibernate
+     * @return этот же экземпляр
+     */
+    public EntityVersions bindTo(@NonNull EntityManagerFactory entityManagerFactory) {
+        val registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .requireService(EventListenerRegistry.class);
+        val listener = new Listener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+        return this;
+    }
+
+    private final class Listener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+            PostCommitDeleteEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            bump(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            bump(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            bump(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+            // Данные не изменились
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+            // Данные не изменились
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+            // Данные не изменились
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return true;
+        }
+    }
+}
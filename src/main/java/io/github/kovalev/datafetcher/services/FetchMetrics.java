@@ -0,0 +1,62 @@
+package io.github.kovalev.datafetcher.services;
+
+/**
+ * Приёмник метрик {@link DataFetcher}.
+ * <p>
+ * Реализация по умолчанию {@link #NOOP} ничего не делает и даже не читает время,
+ * поэтому без подключённого реестра метрик накладные расходы сводятся к пустым вызовам.
+ */
+public interface FetchMetrics {
+
+    FetchMetrics NOOP = new FetchMetrics() {
+    };
+
+    /**
+     * Возвращает отметку времени начала измерения.
+     *
+     * @return отметка времени в наносекундах
+     */
+    default long start() {
+        return 0L;
+    }
+
+    /**
+     * Фиксирует длительность публичной операции.
+     *
+     * @param entityClass класс сущности
+     * @param operation   имя операции
+     * @param graphName   имя графа из сопоставления, {@code dynamic} для графа из дерева полей или {@code none}
+     * @param start       отметка времени начала, полученная из {@link #start()}
+     */
+    default void operation(Class<?> entityClass, String operation, String graphName, long start) {
+    }
+
+    /**
+     * Фиксирует количество строк, возвращённых операцией.
+     *
+     * @param entityClass класс сущности
+     * @param operation   имя операции
+     * @param rows        количество строк
+     */
+    default void rows(Class<?> entityClass, String operation, int rows) {
+    }
+
+    /**
+     * Фиксирует количество идентификаторов в одном запросе загрузки по идентификаторам.
+     *
+     * @param entityClass класс сущности
+     * @param ids         количество идентификаторов
+     */
+    default void ids(Class<?> entityClass, int ids) {
+    }
+
+    /**
+     * Фиксирует длительность этапа получения страницы: {@code count}, {@code ids} или {@code entities}.
+     *
+     * @param entityClass класс сущности
+     * @param phase       имя этапа
+     * @param start       отметка времени начала, полученная из {@link #start()}
+     */
+    default void phase(Class<?> entityClass, String phase, long start) {
+    }
+}
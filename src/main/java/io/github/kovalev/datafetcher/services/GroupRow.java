@@ -0,0 +1,120 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.utils.FunctionParams;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Строка результата группировки с доступом к полям по индексу, см. {@link DataFetcher#mapGroups}.
+ * <p>
+ * Соответствие псевдонимов индексам вычисляется один раз на запрос, а один экземпляр переиспользуется
+ * для всех строк результата, поэтому на строку не создаются промежуточные {@code Map}.
+ * Сохранять экземпляр или передавать его за пределы преобразователя нельзя: после возврата
+ * он указывает на следующую строку. Значения агрегатных функций проходят через преобразователь
+ * {@link FunctionParams#getMapper()}, как и в {@code groups}.
+ */
+public final class GroupRow {
+
+    private final Map<String, Integer> indexes;
+    private final Function<Object, Object>[] mappers;
+    private Tuple tuple;
+
+    @SuppressWarnings("unchecked")
+    GroupRow(List<Selection<?>> selections, List<FunctionParams> functionParams) {
+        this.indexes = new HashMap<>(selections.size() * 2);
+        for (int i = 0; i < selections.size(); i++) {
+            String alias = selections.get(i).getAlias();
+            if (alias != null) {
+                indexes.putIfAbsent(alias, i);
+            }
+        }
+        this.mappers = new Function[selections.size()];
+        for (FunctionParams functionParam : functionParams) {
+            mappers[indexOf(functionParam.getAlias())] = functionParam.getMapper();
+        }
+    }
+
+    GroupRow reset(Tuple tuple) {
+        this.tuple = tuple;
+        return this;
+    }
+
+    /**
+     * Возвращает индекс поля для обращения по индексу в горячих циклах.
+     *
+     * @param alias псевдоним поля группировки или агрегатной функции
+     * @return индекс поля
+     */
+    public int indexOf(@NonNull String alias) {
+        Integer index = indexes.get(alias);
+        if (index == null) {
+            throw new IllegalArgumentException("Поле не найдено в строке группировки: " + alias);
+        }
+        return index;
+    }
+
+    @Nullable
+    public Object get(int index) {
+        Object value = tuple.get(index);
+        Function<Object, Object> mapper = mappers[index];
+        return mapper == null ? value : mapper.apply(value);
+    }
+
+    @Nullable
+    public Object get(@NonNull String alias) {
+        return get(indexOf(alias));
+    }
+
+    @Nullable
+    public <T> T get(@NonNull String alias, @NonNull Class<T> type) {
+        return type.cast(get(alias));
+    }
+
+    /**
+     * Возвращает числовое значение как {@code long}, {@code null} — как 0.
+     */
+    public long getLong(int index) {
+        Object value = get(index);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    public long getLong(@NonNull String alias) {
+        return getLong(indexOf(alias));
+    }
+
+    @Nullable
+    public BigDecimal getBigDecimal(int index) {
+        return switch (get(index)) {
+            case null -> null;
+            case BigDecimal decimal -> decimal;
+            case BigInteger integer -> new BigDecimal(integer);
+            case Long number -> BigDecimal.valueOf(number);
+            case Integer number -> BigDecimal.valueOf(number);
+            case Short number -> BigDecimal.valueOf(number);
+            case Byte number -> BigDecimal.valueOf(number);
+            case Number number -> BigDecimal.valueOf(number.doubleValue());
+            case Object value -> throw new ClassCastException(
+                    "Значение " + value.getClass().getName() + " не является числом");
+        };
+    }
+
+    @Nullable
+    public BigDecimal getBigDecimal(@NonNull String alias) {
+        return getBigDecimal(indexOf(alias));
+    }
+
+    @Nullable
+    public String getString(@NonNull String alias) {
+        Object value = get(alias);
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import lombok.val;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Разбиение выборки на непересекающиеся диапазоны идентификаторов для параллельного чтения.
+ * <p>
+ * Границы вычисляются по наименьшему и наибольшему идентификатору, удовлетворяющему спецификации
+ * (два запроса {@code order by id limit 1} по индексу первичного ключа), и делят отрезок между ними
+ * на равные части. Для {@link UUID} делится старшая половина значения: PostgreSQL сравнивает {@code uuid}
+ * побайтно, что совпадает с беззнаковым порядком старших битов. Первый и последний диапазоны открыты,
+ * поэтому вместе диапазоны покрывают все значения. Идентификаторы других типов не разбиваются.
+ */
+final class IdRanges {
+
+    private static final BigInteger UNSIGNED_LONG = BigInteger.ONE.shiftLeft(Long.SIZE);
+
+    private IdRanges() {
+    }
+
+    static <E> List<Specification<E>> split(EntityManager entityManager,
+                                            Class<E> entityClass,
+                                            String idFieldName,
+                                            Specification<E> specification,
+                                            int partitions) {
+        val min = bound(entityManager, entityClass, idFieldName, specification, true);
+        if (min.isEmpty()) {
+            return List.of();
+        }
+        val max = bound(entityManager, entityClass, idFieldName, specification, false).orElseThrow();
+        val boundaries = boundaries(min.get(), max, partitions);
+        if (boundaries.isEmpty()) {
+            return List.of(Specification.where(specification));
+        }
+        List<Specification<E>> ranges = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            val from = i == 0 ? null : boundaries.get(i - 1);
+            val to = i == boundaries.size() ? null : boundaries.get(i);
+            ranges.add(Specification.where(specification).and(range(idFieldName, from, to)));
+        }
+        return ranges;
+    }
+
+    /**
+     * Внутренние границы диапазонов: {@code partitions - 1} значений строго между {@code min} и {@code max}
+     * или пустой список, если делить нечего.
+     */
+    static List<Object> boundaries(Object min, Object max, int partitions) {
+        if (partitions < 2) {
+            return List.of();
+        }
+        return switch (min) {
+            case Long value -> split(BigInteger.valueOf(value), BigInteger.valueOf((Long) max), partitions)
+                    .stream().map(bound -> (Object) bound.longValue()).toList();
+            case Integer value -> split(BigInteger.valueOf(value), BigInteger.valueOf((Integer) max), partitions)
+                    .stream().map(bound -> (Object) bound.intValue()).toList();
+            case Short value -> split(BigInteger.valueOf(value), BigInteger.valueOf((Short) max), partitions)
+                    .stream().map(bound -> (Object) bound.shortValue()).toList();
+            case UUID value -> split(unsigned(value.getMostSignificantBits()),
+                    unsigned(((UUID) max).getMostSignificantBits()), partitions)
+                    .stream().map(bound -> (Object) new UUID(bound.longValue(), 0)).toList();
+            default -> List.of();
+        };
+    }
+
+    private static List<BigInteger> split(BigInteger min, BigInteger max, int partitions) {
+        val span = max.subtract(min).add(BigInteger.ONE);
+        val count = span.min(BigInteger.valueOf(partitions)).intValueExact();
+        List<BigInteger> result = new ArrayList<>(Math.max(count - 1, 0));
+        for (int i = 1; i < count; i++) {
+            result.add(min.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count))));
+        }
+        return result;
+    }
+
+    private static BigInteger unsigned(long value) {
+        val result = BigInteger.valueOf(value);
+        return value < 0 ? result.add(UNSIGNED_LONG) : result;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> Specification<E> range(String idFieldName, Object from, Object to) {
+        return (root, query, cb) -> {
+            Expression<Comparable> id = root.get(idFieldName);
+            List<Predicate> predicates = new ArrayList<>(2);
+            if (from != null) {
+                predicates.add(cb.greaterThanOrEqualTo(id, (Comparable) from));
+            }
+            if (to != null) {
+                predicates.add(cb.lessThan(id, (Comparable) to));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static <E> Optional<Object> bound(EntityManager entityManager,
+                                              Class<E> entityClass,
+                                              String idFieldName,
+                                              Specification<E> specification,
+                                              boolean min) {
+        val cb = entityManager.getCriteriaBuilder();
+        val query = cb.createQuery(Object.class);
+        val root = query.from(entityClass);
+        val predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        val id = root.get(idFieldName);
+        query.select(id).orderBy(min ? cb.asc(id) : cb.desc(id));
+        return entityManager.createQuery(query)
+                .setMaxResults(1)
+                .getResultStream()
+                .findFirst();
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики {@link DataFetcher} в Micrometer.
+ * <ul>
+ *     <li>{@code data.fetcher.operation} — таймер операции с тегами {@code entity}, {@code operation}, {@code graph}
+ *     (имя графа из сопоставления, {@code dynamic} для графа из дерева полей или {@code none});</li>
+ *     <li>{@code data.fetcher.rows} — распределение количества возвращённых строк по операциям;</li>
+ *     <li>{@code data.fetcher.ids} — распределение количества идентификаторов в одном запросе IN;</li>
+ *     <li>{@code data.fetcher.page.phase} — таймер этапов получения страницы с тегом {@code phase}.</li>
+ * </ul>
+ * Метры регистрируются при первом использовании и кэшируются.
+ */
+@RequiredArgsConstructor
+public class MicrometerFetchMetrics implements FetchMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    @Override
+    public long start() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void operation(Class<?> entityClass, String operation, String graphName, long start) {
+        timers.computeIfAbsent(new MeterKey("operation", entityClass, operation, graphName),
+                        key -> Timer.builder("data.fetcher.operation")
+                                .description("Длительность операции DataFetcher")
+                                .tag("entity", entityClass.getSimpleName())
+                                .tag("operation", operation)
+                                .tag("graph", graphName)
+                                .register(registry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void rows(Class<?> entityClass, String operation, int rows) {
+        summaries.computeIfAbsent(new MeterKey("rows", entityClass, operation, null),
+                        key -> DistributionSummary.builder("data.fetcher.rows")
+                                .description("Количество строк, возвращённых операцией DataFetcher")
+                                .tag("entity", entityClass.getSimpleName())
+                                .tag("operation", operation)
+                                .register(registry))
+                .record(rows);
+    }
+
+    @Override
+    public void ids(Class<?> entityClass, int ids) {
+        summaries.computeIfAbsent(new MeterKey("ids", entityClass, null, null),
+                        key -> DistributionSummary.builder("data.fetcher.ids")
+                                .description("Количество идентификаторов в одном запросе IN")
+                                .tag("entity", entityClass.getSimpleName())
+                                .register(registry))
+                .record(ids);
+    }
+
+    @Override
+    public void phase(Class<?> entityClass, String phase, long start) {
+        timers.computeIfAbsent(new MeterKey("phase", entityClass, phase, null),
+                        key -> Timer.builder("data.fetcher.page.phase")
+                                .description("Длительность этапа получения страницы")
+                                .tag("entity", entityClass.getSimpleName())
+                                .tag("phase", phase)
+                                .register(registry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private record MeterKey(String meter, Class<?> entityClass, String name, String graphName) {
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.criteria.CriteriaQuery;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Заранее построенный шаблон запроса сущностей, см. {@link DataFetcher#prepare}.
+ * <p>
+ * Дерево критериев, пути сортировки и fetch-соединения строятся один раз при подготовке, значения условий
+ * передаются при каждом вызове через именованные параметры ({@code cb.parameter(String.class, "name")}).
+ * Каждое выполнение работает с копией дерева, поэтому экземпляр неизменяем и может использоваться из разных
+ * потоков и сессий. Трансляция в SQL при этом выполняется заново: Hibernate 6.6 кэширует план критериев
+ * только по экземпляру дерева, а разделять одно дерево между сессиями без копирования небезопасно.
+ *
+ * @param <E> тип сущности
+ */
+@Getter(AccessLevel.PACKAGE)
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public final class PreparedFetch<E> {
+
+    private final CriteriaQuery<E> query;
+    private final CriteriaQuery<Long> countQuery;
+    private final String graphName;
+}
@@ -0,0 +1,94 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.criteria.CommonAbstractCriteria;
+import org.hibernate.query.sqm.tree.SqmCopyContext;
+import org.hibernate.query.sqm.tree.SqmStatement;
+import org.hibernate.query.sqm.tree.expression.ValueBindJpaCriteriaParameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Устойчивый отпечаток запроса критериев: HQL-представление структуры и значения условий.
+ * <p>
+ * Значения, переданные в критерии напрямую, Hibernate выводит в HQL через {@code toString()} без кавычек,
+ * поэтому разные значения могли бы дать одинаковый текст. Перед построением HQL каждое значение заменяется
+ * именованным параметром по его экземпляру, а сами значения сравниваются через {@code equals}: значения
+ * условий должны быть неизменяемыми и сравниваться по значению. Неявные псевдонимы Hibernate содержат
+ * {@code identityHashCode} узла и различаются от вызова к вызову, поэтому они заменяются порядковыми номерами.
+ *
+ * @param hql    HQL-представление запроса с параметрами вместо значений
+ * @param values значения параметров в порядке их появления в запросе
+ */
+record QueryFingerprint(String hql, List<Object> values) {
+
+    private static final Pattern GENERATED_ALIAS = Pattern.compile("alias_-?\\d+");
+
+    static QueryFingerprint of(CommonAbstractCriteria query) {
+        ValuesCopyContext context = new ValuesCopyContext();
+        String hql = ((SqmStatement<?>) query).copy(context).toHqlString();
+        return new QueryFingerprint(normalize(hql), Collections.unmodifiableList(context.values));
+    }
+
+    static String normalize(String hql) {
+        Map<String, String> aliases = new HashMap<>();
+        Matcher matcher = GENERATED_ALIAS.matcher(hql);
+        StringBuilder result = new StringBuilder(hql.length());
+        while (matcher.find()) {
+            String alias = aliases.computeIfAbsent(matcher.group(), key -> "a" + aliases.size());
+            matcher.appendReplacement(result, alias);
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Копирует дерево запроса, заменяя параметры со значением параметрами, выводимыми как {@code :v0, :v1, ...}.
+     * Один экземпляр параметра, встречающийся в дереве несколько раз, получает одно имя.
+     */
+    private static final class ValuesCopyContext implements SqmCopyContext {
+
+        private final SqmCopyContext copies = SqmCopyContext.simpleContext();
+        private final List<Object> values = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getCopy(T original) {
+            T copy = copies.getCopy(original);
+            if (copy == null && original instanceof ValueBindJpaCriteriaParameter<?> parameter) {
+                Placeholder<?> placeholder = new Placeholder<>(parameter, values.size());
+                values.add(parameter.getValue());
+                copy = copies.registerCopy(original, (T) placeholder);
+            }
+            return copy;
+        }
+
+        @Override
+        public <T> T registerCopy(T original, T copy) {
+            return copies.registerCopy(original, copy);
+        }
+    }
+
+    /**
+     * Параметр со значением, который выводится в HQL по номеру, а не через {@code toString()} значения.
+     */
+    private static final class Placeholder<T> extends ValueBindJpaCriteriaParameter<T> {
+
+        private final int index;
+
+        private Placeholder(ValueBindJpaCriteriaParameter<T> parameter, int index) {
+            super(parameter.getAnticipatedType(), parameter.getValue(), parameter.nodeBuilder());
+            this.index = index;
+        }
+
+        @Override
+        public void appendHqlString(StringBuilder hql) {
+            hql.append(":v").append(index);
+        }
+    }
+}
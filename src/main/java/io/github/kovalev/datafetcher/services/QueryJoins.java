@@ -0,0 +1,85 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.AttributeNode;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import java.util.List;
+
+/**
+ * Анализ соединений запроса: может ли запрос вернуть строку корневой сущности несколько раз.
+ * <p>
+ * Строки размножают только соединения и выборки коллекций, соединения без атрибута (соединение
+ * с произвольной сущностью) и несколько корней. Если их нет, {@code distinct} не нужен: без него
+ * PostgreSQL может читать первые строки прямо из индекса по полям сортировки, не сортируя
+ * и не хешируя всю отфильтрованную выборку. Подзапросы строки не размножают и не учитываются.
+ * Так же анализируется граф сущности: граф без коллекций можно применить к запросу с {@code limit}.
+ */
+final class QueryJoins {
+
+    private QueryJoins() {
+    }
+
+    /**
+     * @param query запрос с уже применёнными условиями, выборкой и сортировкой
+     * @return true, если корневая сущность может встретиться в результате несколько раз
+     */
+    static boolean multipliesRows(AbstractQuery<?> query) {
+        if (query.getRoots().size() != 1) {
+            return true;
+        }
+        return multipliesRows(query.getRoots().iterator().next());
+    }
+
+    /**
+     * @param nodes узлы графа сущности
+     * @param type  тип, которому принадлежат узлы
+     * @return true, если граф выбирает коллекцию на каком-либо уровне
+     */
+    static boolean fetchesCollections(List<? extends AttributeNode<?>> nodes, ManagedType<?> type) {
+        for (AttributeNode<?> node : nodes) {
+            Attribute<?, ?> attribute = type.getAttribute(node.getAttributeName());
+            if (attribute.isCollection()) {
+                return true;
+            }
+            Object attributeType = ((SingularAttribute<?, ?>) attribute).getType();
+            if (attributeType instanceof ManagedType<?> managedType) {
+                for (Subgraph<?> subgraph : node.getSubgraphs().values()) {
+                    if (fetchesCollections(subgraph.getAttributeNodes(), managedType)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean multipliesRows(From<?, ?> from) {
+        for (Join<?, ?> join : from.getJoins()) {
+            if (toMany(join.getAttribute()) || multipliesRows(join)) {
+                return true;
+            }
+        }
+        return fetchesMultiplyRows(from);
+    }
+
+    private static boolean fetchesMultiplyRows(FetchParent<?, ?> parent) {
+        for (Fetch<?, ?> fetch : parent.getFetches()) {
+            if (toMany(fetch.getAttribute()) || fetchesMultiplyRows(fetch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean toMany(Attribute<?, ?> attribute) {
+        return attribute == null || attribute.isCollection();
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.utils.LruCache;
+import io.github.kovalev.datafetcher.utils.SingleFlight;
+import org.springframework.data.domain.Slice;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов запросов страниц, срезов и групп с однократной загрузкой.
+ * <p>
+ * Вес записи равен количеству строк результата, поэтому объём кэша ограничен суммарным числом строк.
+ * Если несколько потоков одновременно запрашивают отсутствующий результат, запрос к базе данных
+ * выполняет первый из них, остальные ожидают и получают тот же результат.
+ */
+class ResultCache {
+
+    private final LruCache<Key, Object> cache;
+    private final SingleFlight<Key, Object> loads = new SingleFlight<>();
+
+    ResultCache(long maximumRows, Duration expireAfterWrite) {
+        this.cache = new LruCache<>(maximumRows, ResultCache::weight, expireAfterWrite);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Key key, Supplier<T> loader) {
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        return (T) loads.execute(key, () -> {
+            // Результат мог быть сохранён между промахом и регистрацией загрузки
+            Object value = cache.getIfPresent(key);
+            if (value == null) {
+                value = loader.get();
+                cache.put(key, value);
+            }
+            return value;
+        });
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static long weight(Object value) {
+        if (value instanceof Slice<?> slice) {
+            return slice.getNumberOfElements() + 1L;
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection.size() + 1L;
+        }
+        return 1;
+    }
+
+    /**
+     * Ключ результата: операция, отпечаток запроса и прочие параметры
+     * (пагинация, вид и имя или сигнатура графа, способ подсчёта).
+     */
+    record Key(String operation, QueryFingerprint fingerprint, List<?> parameters) {
+    }
+}
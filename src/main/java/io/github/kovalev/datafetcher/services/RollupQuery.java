@@ -0,0 +1,202 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.utils.FunctionParams;
+import io.github.kovalev.datafetcher.utils.GroupLevel;
+import io.github.kovalev.datafetcher.utils.GroupParam;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.val;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.sqm.NodeBuilder;
+import org.hibernate.query.sqm.tree.expression.SqmExpression;
+import org.hibernate.query.sqm.tree.expression.SqmSummarization;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Многоуровневая группировка по префиксам полей одним запросом.
+ * <p>
+ * На PostgreSQL строится {@code group by rollup(...)}, уровень строки вычисляется по {@code grouping(...)}:
+ * итоги по всем уровням получаются за один проход по данным. На других СУБД запрос собирается
+ * из запросов каждого уровня через {@code union all}, недостающие поля заполняются {@code null}.
+ * Строки упорядочены по полям группировки, промежуточный итог следует за своими детальными строками,
+ * общий итог — последний.
+ * <p>
+ * Публичного API для {@code rollup} в критериях Hibernate нет, поэтому узел строится внутренним конструктором
+ * {@link SqmSummarization}. Если после обновления Hibernate он недоступен, используется объединение запросов.
+ */
+class RollupQuery {
+
+    private static final String LEVEL_ALIAS = "rollup_level";
+
+    private final EntityManager entityManager;
+    private volatile boolean nativeRollup;
+
+    RollupQuery(EntityManager entityManager) {
+        this(entityManager, entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect() instanceof PostgreSQLDialect);
+    }
+
+    /**
+     * Создаёт запрос с явно выбранным способом построения.
+     *
+     * @param entityManager менеджер сущностей
+     * @param nativeRollup  строить {@code group by rollup(...)}, иначе объединение запросов уровней
+     */
+    RollupQuery(EntityManager entityManager, boolean nativeRollup) {
+        this.entityManager = entityManager;
+        this.nativeRollup = nativeRollup;
+    }
+
+    <E> List<GroupLevel<Map<String, Object>>> execute(Class<E> entityClass,
+                                                      Specification<E> specification,
+                                                      List<GroupParam> groupParams,
+                                                      List<FunctionParams> functionParams) {
+        if (nativeRollup) {
+            CriteriaQuery<Tuple> query;
+            try {
+                query = rollupQuery(entityClass, specification, groupParams, functionParams);
+            } catch (LinkageError e) {
+                // Внутренний конструктор SqmSummarization изменился: дальше используется объединение запросов
+                nativeRollup = false;
+                return execute(entityClass, specification, groupParams, functionParams);
+            }
+            val size = groupParams.size();
+            // Бит grouping(...) установлен для каждого поля, свёрнутого в итог
+            return rows(query, groupParams, functionParams, mask -> size - Integer.bitCount(mask));
+        }
+        val rows = new ArrayList<>(rows(unionQuery(entityClass, specification, groupParams, functionParams),
+                groupParams, functionParams, IntUnaryOperator.identity()));
+        rows.sort(order(groupParams));
+        return rows;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <E> CriteriaQuery<Tuple> rollupQuery(Class<E> entityClass,
+                                                 Specification<E> specification,
+                                                 List<GroupParam> groupParams,
+                                                 List<FunctionParams> functionParams) {
+        val cb = (HibernateCriteriaBuilder) entityManager.getCriteriaBuilder();
+        val query = cb.createTupleQuery();
+        val root = where(query, entityClass, specification);
+
+        List<Expression<?>> groups = new ArrayList<>();
+        List<SqmExpression<?>> groupings = new ArrayList<>();
+        for (GroupParam groupParam : groupParams) {
+            val expression = groupParam.expression(root, cb);
+            groups.add(expression);
+            groupings.add((SqmExpression<?>) expression);
+        }
+        val grouping = cb.function("grouping", Integer.class, groups.toArray(new Expression<?>[0]));
+        grouping.alias(LEVEL_ALIAS);
+
+        List<Selection<?>> selections = new ArrayList<>(groups);
+        selections.add(grouping);
+        functionParams.forEach(functionParam -> selections.add(functionParam.expression(root, cb)));
+
+        List<Order> orders = new ArrayList<>();
+        groups.forEach(expression -> orders.add(cb.asc(expression, false)));
+        orders.add(cb.asc(grouping));
+
+        return query.multiselect(selections)
+                .groupBy(new SqmSummarization(SqmSummarization.Kind.ROLLUP, groupings, (NodeBuilder) cb))
+                .orderBy(orders);
+    }
+
+    private <E> CriteriaQuery<Tuple> unionQuery(Class<E> entityClass,
+                                                Specification<E> specification,
+                                                List<GroupParam> groupParams,
+                                                List<FunctionParams> functionParams) {
+        val cb = (HibernateCriteriaBuilder) entityManager.getCriteriaBuilder();
+        List<CriteriaQuery<Tuple>> levels = new ArrayList<>();
+        for (int level = groupParams.size(); level >= 0; level--) {
+            levels.add(levelQuery(entityClass, specification, groupParams, functionParams, level));
+        }
+        return cb.unionAll(levels.getFirst(), levels.subList(1, levels.size()).toArray(new CriteriaQuery<?>[0]));
+    }
+
+    private <E> CriteriaQuery<Tuple> levelQuery(Class<E> entityClass,
+                                                Specification<E> specification,
+                                                List<GroupParam> groupParams,
+                                                List<FunctionParams> functionParams,
+                                                int level) {
+        val cb = (HibernateCriteriaBuilder) entityManager.getCriteriaBuilder();
+        val query = cb.createTupleQuery();
+        val root = where(query, entityClass, specification);
+
+        List<Selection<?>> selections = new ArrayList<>();
+        List<Expression<?>> groups = new ArrayList<>();
+        for (int i = 0; i < groupParams.size(); i++) {
+            val expression = groupParams.get(i).expression(root, cb);
+            if (i < level) {
+                selections.add(expression);
+                groups.add(expression);
+            } else {
+                selections.add(cb.nullLiteral(expression.getJavaType()).alias(expression.getAlias()));
+            }
+        }
+        selections.add(cb.literal(level).alias(LEVEL_ALIAS));
+        functionParams.forEach(functionParam -> selections.add(functionParam.expression(root, cb)));
+
+        return query.multiselect(selections).groupBy(groups);
+    }
+
+    private <E> Root<E> where(CriteriaQuery<Tuple> query, Class<E> entityClass, Specification<E> specification) {
+        val cb = entityManager.getCriteriaBuilder();
+        val root = query.from(entityClass);
+        if (specification != null) {
+            val predicate = specification.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        return root;
+    }
+
+    private List<GroupLevel<Map<String, Object>>> rows(CriteriaQuery<Tuple> query,
+                                                       List<GroupParam> groupParams,
+                                                       List<FunctionParams> functionParams,
+                                                       IntUnaryOperator level) {
+        return entityManager.createQuery(query)
+                .getResultList()
+                .stream()
+                .map(tuple -> {
+                    int value = ((Number) tuple.get(LEVEL_ALIAS)).intValue();
+                    return new GroupLevel<>(level.applyAsInt(value),
+                            DataFetcher.groupMap(tuple, groupParams, functionParams));
+                })
+                .toList();
+    }
+
+    /**
+     * Порядок строк, совпадающий с порядком запроса {@code rollup}: по полям группировки
+     * с {@code null} в конце, при равенстве — сначала более детальный уровень.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<GroupLevel<Map<String, Object>>> order(List<GroupParam> groupParams) {
+        Comparator<Object> values = Comparator.nullsLast((left, right) ->
+                left instanceof Comparable comparable && left.getClass() == right.getClass()
+                        ? comparable.compareTo(right)
+                        : 0);
+        Comparator<GroupLevel<Map<String, Object>>> comparator = (left, right) -> 0;
+        for (GroupParam groupParam : groupParams) {
+            val alias = groupParam.getAlias();
+            comparator = comparator.thenComparing(row -> row.value().get(alias), values);
+        }
+        return comparator.thenComparing(GroupLevel::level, Comparator.reverseOrder());
+    }
+}
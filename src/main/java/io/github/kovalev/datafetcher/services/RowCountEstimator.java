@@ -0,0 +1,146 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.sqm.internal.QuerySqmImpl;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.OptionalLong;
+import java.util.regex.Pattern;
+
+/**
+ * Оценивает количество строк запроса по плану PostgreSQL без его выполнения.
+ * <p>
+ * SQL запроса получается трансляцией SQM Hibernate, параметры заменяются на {@code $n}
+ * и план строится через {@code EXPLAIN (GENERIC_PLAN)} (PostgreSQL 16+), поэтому значения параметров не нужны.
+ * На других СУБД и версиях PostgreSQL до 16 запрос плана не выполняется и оценка пуста.
+ * План запрашивается через JDBC внутри точки сохранения: ошибка откатывается до неё и не прерывает
+ * транзакцию вызывающего кода и не помечает её для отката, поэтому после пустой оценки можно выполнить
+ * обычный подсчёт в той же транзакции.
+ */
+@Slf4j
+class RowCountEstimator {
+
+    private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
+    private static final int GENERIC_PLAN_VERSION = 16;
+
+    private volatile Boolean supported;
+
+    OptionalLong estimate(EntityManager entityManager, TypedQuery<?> query) {
+        if (!supported(entityManager)) {
+            return OptionalLong.empty();
+        }
+        String sql;
+        try {
+            sql = sql(query);
+        } catch (RuntimeException e) {
+            log.warn("Ошибка трансляции запроса для оценки количества строк: {}", e.getMessage());
+            return OptionalLong.empty();
+        }
+        return explain(entityManager, "explain (generic_plan) " + numberParameters(sql));
+    }
+
+    /**
+     * Выполняет запрос плана и извлекает из первой строки оценку {@code rows=}.
+     */
+    OptionalLong explain(EntityManager entityManager, String sql) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            String plan;
+            try {
+                plan = firstRow(connection, sql);
+            } catch (SQLException e) {
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+                log.warn("Ошибка оценки количества строк: {}", e.getMessage());
+                return OptionalLong.empty();
+            }
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+            if (plan == null) {
+                return OptionalLong.empty();
+            }
+            val matcher = PLAN_ROWS.matcher(plan);
+            return matcher.find() ? OptionalLong.of(Long.parseLong(matcher.group(1))) : OptionalLong.empty();
+        });
+    }
+
+    /**
+     * @return true, если СУБД поддерживает {@code EXPLAIN (GENERIC_PLAN)}
+     */
+    static boolean supports(Dialect dialect) {
+        return dialect instanceof PostgreSQLDialect && dialect.getVersion().isSameOrAfter(GENERIC_PLAN_VERSION);
+    }
+
+    private boolean supported(EntityManager entityManager) {
+        if (supported == null) {
+            supported = supports(entityManager.getEntityManagerFactory()
+                    .unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices()
+                    .getDialect());
+        }
+        return supported;
+    }
+
+    private static String firstRow(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+
+    static String sql(TypedQuery<?> query) {
+        QuerySqmImpl<?> sqmQuery = query.unwrap(QuerySqmImpl.class);
+        val session = (SharedSessionContractImplementor) sqmQuery.getSession();
+        val factory = session.getFactory();
+        val sqlAst = factory.getQueryEngine().getSqmTranslatorFactory()
+                .createSelectTranslator(
+                        (SqmSelectStatement<?>) sqmQuery.getSqmStatement(),
+                        sqmQuery.getQueryOptions(),
+                        sqmQuery.getDomainParameterXref(),
+                        sqmQuery.getQueryParameterBindings(),
+                        session.getLoadQueryInfluencers(),
+                        factory,
+                        false
+                )
+                .translate()
+                .getSqlAst();
+        return factory.getJdbcServices().getJdbcEnvironment().getSqlAstTranslatorFactory()
+                .buildSelectTranslator(factory, sqlAst)
+                .translate(null, sqmQuery.getQueryOptions())
+                .getSqlString();
+    }
+
+    /**
+     * Заменяет JDBC-параметры {@code ?} вне строковых литералов на нумерованные {@code $1, $2, ...}.
+     */
+    static String numberParameters(String sql) {
+        val result = new StringBuilder(sql.length() + 16);
+        boolean quoted = false;
+        int index = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (c == '?' && !quoted) {
+                result.append('$').append(++index);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
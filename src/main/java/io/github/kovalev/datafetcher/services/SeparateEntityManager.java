@@ -0,0 +1,37 @@
+package io.github.kovalev.datafetcher.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import org.hibernate.Session;
+
+import java.util.function.Function;
+
+/**
+ * Выполняет работу в отдельном {@link EntityManager} со своим соединением и транзакцией только для чтения.
+ * <p>
+ * Используется для запросов, выполняемых параллельно с основным потоком. Такие запросы не видят
+ * незафиксированных изменений транзакции вызывающего кода.
+ */
+@RequiredArgsConstructor
+class SeparateEntityManager {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    <T> T readOnly(Function<EntityManager, T> work) {
+        val entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.unwrap(Session.class).setDefaultReadOnly(true);
+            val transaction = entityManager.getTransaction();
+            transaction.begin();
+            try {
+                return work.apply(entityManager);
+            } finally {
+                transaction.rollback();
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.kovalev.datafetcher.utils;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Способ вычисления общего количества элементов страницы.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class CountStrategy {
+
+    private static final CountStrategy EXACT = new CountStrategy(Type.EXACT, 0);
+    private static final CountStrategy ESTIMATED = new CountStrategy(Type.ESTIMATED, 0);
+    private static final CountStrategy SKIP_IF_LAST_PAGE = new CountStrategy(Type.SKIP_IF_LAST_PAGE, 0);
+    private static final CountStrategy WINDOW = new CountStrategy(Type.WINDOW, 0);
+
+    private final Type type;
+    private final int cap;
+
+    /**
+     * Точный подсчёт {@code count(distinct ...)}.
+     */
+    public static CountStrategy exact() {
+        return EXACT;
+    }
+
+    /**
+     * Подсчёт не более {@code cap + 1} строк ограниченным запросом.
+     * Если строк больше {@code cap}, общее количество равно {@code cap + 1}.
+     *
+     * @param cap максимальное точно подсчитываемое количество
+     */
+    public static CountStrategy capped(int cap) {
+        if (cap < 0) {
+            throw new IllegalArgumentException("Ограничение подсчёта не может быть отрицательным: " + cap);
+        }
+        return new CountStrategy(Type.CAPPED, cap);
+    }
+
+    /**
+     * Оценка количества строк планировщиком PostgreSQL ({@code EXPLAIN}).
+     * При невозможности получить оценку, а также при соединении коллекций, где план оценивает строки соединения,
+     * выполняется точный подсчёт.
+     */
+    public static CountStrategy estimated() {
+        return ESTIMATED;
+    }
+
+    /**
+     * Подсчёт выполняется, только если количество нельзя вывести из неполной страницы идентификаторов.
+     */
+    public static CountStrategy skipIfLastPage() {
+        return SKIP_IF_LAST_PAGE;
+    }
+
+    /**
+     * Подсчёт оконной функцией {@code count(*) over()} в том же запросе, что и страница идентификаторов,
+     * а без графа сущности — в запросе самих сущностей. Если запрос содержит соединения коллекций
+     * или страница оказалась за концом выборки, выполняется точный подсчёт.
+     */
+    public static CountStrategy window() {
+        return WINDOW;
+    }
+
+    public enum Type {
+        EXACT,
+        CAPPED,
+        ESTIMATED,
+        SKIP_IF_LAST_PAGE,
+        WINDOW
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.kovalev.datafetcher.utils;
+
+/**
+ * Строка многоуровневой группировки с номером уровня.
+ * <p>
+ * Уровень равен количеству первых полей группировки, по которым сгруппирована строка:
+ * детальные строки имеют уровень, равный числу полей, промежуточные итоги — меньший,
+ * общий итог — 0. Поля, не входящие в уровень, в строке равны {@code null}.
+ *
+ * @param level уровень группировки
+ * @param value строка результата
+ * @param <D>   тип строки результата
+ */
+public record GroupLevel<D>(int level, D value) {
+}
@@ -0,0 +1,85 @@
+package io.github.kovalev.datafetcher.utils;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Преобразует позицию keyset-пагинации в непрозрачную строку курсора и обратно.
+ * <p>
+ * Значения ключей сохраняются строками и приводятся к типу колонки при построении запроса,
+ * поэтому курсор можно безопасно передавать клиенту.
+ */
+public final class KeysetCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * Кодирует позицию в строку курсора.
+     *
+     * @param position позиция keyset-пагинации
+     * @return строка курсора
+     */
+    public static String encode(@NonNull ScrollPosition position) {
+        if (!(position instanceof KeysetScrollPosition keyset)) {
+            throw new IllegalArgumentException("Поддерживается только KeysetScrollPosition: " + position);
+        }
+        StringJoiner joiner = new StringJoiner("&", keyset.scrollsForward() ? ">" : "<", "");
+        for (Map.Entry<String, Object> entry : keyset.getKeys().entrySet()) {
+            String key = URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8);
+            joiner.add(entry.getValue() == null
+                    ? key
+                    : key + "=" + URLEncoder.encode(String.valueOf(entry.getValue()), StandardCharsets.UTF_8));
+        }
+        return ENCODER.encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Декодирует строку курсора в позицию. Пустой курсор соответствует начальной позиции.
+     *
+     * @param cursor строка курсора
+     * @return позиция keyset-пагинации
+     */
+    public static KeysetScrollPosition decode(@Nullable String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return ScrollPosition.keyset();
+        }
+        String raw;
+        try {
+            raw = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + cursor, e);
+        }
+        if (raw.isEmpty() || (raw.charAt(0) != '>' && raw.charAt(0) != '<')) {
+            throw new IllegalArgumentException("Некорректный курсор: " + cursor);
+        }
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (String pair : StringUtils.delimitedListToStringArray(raw.substring(1), "&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int index = pair.indexOf('=');
+            if (index < 0) {
+                keys.put(URLDecoder.decode(pair, StandardCharsets.UTF_8), null);
+            } else {
+                keys.put(URLDecoder.decode(pair.substring(0, index), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return raw.charAt(0) == '>' ? ScrollPosition.forward(keys) : ScrollPosition.backward(keys);
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.kovalev.datafetcher.utils;
+
+import io.github.kovalev.specificationhelper.utils.PathCalculator;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.lang.NonNull;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Условие keyset-пагинации: строки, следующие в порядке сортировки за позицией {@code keys}.
+ * <p>
+ * Сравнение кортежей {@code (a, b, id) > (?, ?, ?)} раскрывается в цепочку
+ * {@code a > ? or (a = ? and b > ?) or (a = ? and b = ? and id > ?)}, что позволяет смешивать
+ * направления сортировки. Дополнительное условие {@code a >= ?} по первому ключу позволяет
+ * планировщику использовать индекс по колонкам сортировки.
+ * Значения ключей сортировки не должны быть null.
+ *
+ * @param <E> тип сущности
+ */
+@RequiredArgsConstructor
+public final class KeysetSpecification<E> implements Specification<E> {
+
+    private final Sort sort;
+    private final Map<String, ?> keys;
+
+    @Override
+    public Predicate toPredicate(@NonNull Root<E> root, CriteriaQuery<?> query, @NonNull CriteriaBuilder cb) {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        Predicate leadingBound = null;
+        List<Predicate> equalities = new ArrayList<>();
+        List<Predicate> disjunction = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            val property = order.getProperty();
+            if (!keys.containsKey(property) || keys.get(property) == null) {
+                throw new IllegalArgumentException("Позиция не содержит значение ключа сортировки: " + property);
+            }
+            Expression<Comparable<Object>> path = comparable(root, property);
+            Comparable<Object> value = convert(keys.get(property), path.getJavaType());
+
+            List<Predicate> conjunction = new ArrayList<>(equalities);
+            conjunction.add(order.isAscending() ? cb.greaterThan(path, value) : cb.lessThan(path, value));
+            disjunction.add(cb.and(conjunction.toArray(new Predicate[0])));
+            equalities.add(cb.equal(path, value));
+
+            if (leadingBound == null) {
+                leadingBound = order.isAscending()
+                        ? cb.greaterThanOrEqualTo(path, value)
+                        : cb.lessThanOrEqualTo(path, value);
+            }
+        }
+        return cb.and(leadingBound, cb.or(disjunction.toArray(new Predicate[0])));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Expression<Comparable<Object>> comparable(Root<?> root, String property) {
+        return (Expression<Comparable<Object>>) (Expression<?>) new PathCalculator<>(root, property.split("\\.")).path();
+    }
+
+    /**
+     * Приводит значение ключа к типу колонки. Значения из {@link KeysetCursor} приходят строками.
+     */
+    @SuppressWarnings("unchecked")
+    static Comparable<Object> convert(Object value, Class<?> javaType) {
+        if (javaType == null || javaType.isInstance(value) || !(value instanceof String string)) {
+            return (Comparable<Object>) value;
+        }
+        Method parse = ReflectionUtils.findMethod(javaType, "parse", CharSequence.class);
+        if (parse != null && Modifier.isStatic(parse.getModifiers())) {
+            return (Comparable<Object>) ReflectionUtils.invokeMethod(parse, null, string);
+        }
+        return (Comparable<Object>) DefaultConversionService.getSharedInstance().convert(string, javaType);
+    }
+}
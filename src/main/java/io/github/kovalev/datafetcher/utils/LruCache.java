@@ -0,0 +1,278 @@
+package io.github.kovalev.datafetcher.utils;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Потокобезопасный кэш с ограничением размера и вытеснением давно не использованных записей.
+ * <p>
+ * Размер может ограничиваться количеством записей или суммарным весом значений,
+ * записи могут устаревать через заданное время после сохранения.
+ * Ключи могут объединяться в группы, которые удаляются целиком без просмотра всего кэша.
+ * Блокировка удерживается только на время поиска и вставки записи, значение вычисляется вне блокировки,
+ * поэтому при одновременном промахе по одному ключу значение может быть вычислено несколько раз.
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public final class LruCache<K, V> {
+
+    private final long maximumWeight;
+    private final ToLongFunction<? super V> weigher;
+    private final long expireAfterWriteNanos;
+    private final LongSupplier ticker;
+    private final Function<? super K, ?> grouping;
+    private final Map<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Object, Set<K>> groups = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long totalWeight;
+
+    public LruCache(int maximumSize) {
+        this(maximumSize, value -> 1, null);
+    }
+
+    /**
+     * Создаёт кэш с ограничением суммарного веса и временем жизни записей.
+     *
+     * @param maximumWeight     максимальный суммарный вес значений, 0 отключает кэширование
+     * @param weigher           функция веса значения
+     * @param expireAfterWrite  время жизни записи после сохранения, null — без ограничения
+     */
+    public LruCache(long maximumWeight, @NonNull ToLongFunction<? super V> weigher,
+                    @Nullable Duration expireAfterWrite) {
+        this(maximumWeight, weigher, expireAfterWrite, null, System::nanoTime);
+    }
+
+    /**
+     * Создаёт кэш с ограничением суммарного веса, временем жизни записей и группировкой ключей.
+     *
+     * @param maximumWeight     максимальный суммарный вес значений, 0 отключает кэширование
+     * @param weigher           функция веса значения
+     * @param expireAfterWrite  время жизни записи после сохранения, null — без ограничения
+     * @param grouping          группа ключа для {@link #invalidateGroup(Object)}, null — без групп
+     */
+    public LruCache(long maximumWeight, @NonNull ToLongFunction<? super V> weigher,
+                    @Nullable Duration expireAfterWrite, @Nullable Function<? super K, ?> grouping) {
+        this(maximumWeight, weigher, expireAfterWrite, grouping, System::nanoTime);
+    }
+
+    LruCache(long maximumWeight, ToLongFunction<? super V> weigher, Duration expireAfterWrite, LongSupplier ticker) {
+        this(maximumWeight, weigher, expireAfterWrite, null, ticker);
+    }
+
+    LruCache(long maximumWeight, ToLongFunction<? super V> weigher, Duration expireAfterWrite,
+             Function<? super K, ?> grouping, LongSupplier ticker) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Размер кэша не может быть отрицательным: " + maximumWeight);
+        }
+        if (expireAfterWrite != null && (expireAfterWrite.isNegative() || expireAfterWrite.isZero())) {
+            throw new IllegalArgumentException("Время жизни записи должно быть положительным: " + expireAfterWrite);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+        this.ticker = ticker;
+        this.grouping = grouping;
+    }
+
+    /**
+     * Возвращает значение из кэша или вычисляет и сохраняет его.
+     *
+     * @param key    ключ
+     * @param loader функция вычисления значения при промахе
+     * @return значение
+     */
+    public V get(@NonNull K key, @NonNull Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Возвращает значение из кэша без вычисления.
+     *
+     * @param key ключ
+     * @return значение или null, если его нет в кэше или запись устарела
+     */
+    public V getIfPresent(@NonNull K key) {
+        V value = null;
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (expired(entry)) {
+                    remove(key);
+                } else {
+                    value = entry.value();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    public void put(@NonNull K key, @NonNull V value) {
+        if (maximumWeight == 0) {
+            return;
+        }
+        long weight = weigher.applyAsLong(value);
+        long expiresAt = expireAfterWriteNanos == 0 ? 0 : ticker.getAsLong() + expireAfterWriteNanos;
+        lock.lock();
+        try {
+            Entry<V> previous = entries.put(key, new Entry<>(value, weight, expiresAt));
+            if (previous != null) {
+                totalWeight -= previous.weight();
+            } else if (grouping != null) {
+                groups.computeIfAbsent(grouping.apply(key), group -> new HashSet<>()).add(key);
+            }
+            totalWeight += weight;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(@NonNull K key) {
+        lock.lock();
+        try {
+            remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет записи, ключи которых удовлетворяют условию. Просматривает весь кэш.
+     *
+     * @param predicate условие удаления
+     */
+    public void invalidateIf(@NonNull Predicate<? super K> predicate) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> entry = iterator.next();
+                if (predicate.test(entry.getKey())) {
+                    totalWeight -= entry.getValue().weight();
+                    iterator.remove();
+                    ungroup(entry.getKey());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет записи группы. Просматривает только ключи группы, а не весь кэш.
+     *
+     * @param group группа, вычисленная функцией группировки кэша
+     */
+    public void invalidateGroup(@NonNull Object group) {
+        if (grouping == null) {
+            throw new IllegalStateException("Группировка ключей не задана");
+        }
+        lock.lock();
+        try {
+            Set<K> keys = groups.remove(group);
+            if (keys != null) {
+                for (K key : keys) {
+                    Entry<V> removed = entries.remove(key);
+                    if (removed != null) {
+                        totalWeight -= removed.weight();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            groups.clear();
+            totalWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private boolean expired(Entry<V> entry) {
+        return entry.expiresAt() != 0 && ticker.getAsLong() - entry.expiresAt() >= 0;
+    }
+
+    private void remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight();
+            ungroup(key);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (totalWeight > maximumWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            totalWeight -= entry.getValue().weight();
+            iterator.remove();
+            ungroup(entry.getKey());
+        }
+    }
+
+    private void ungroup(K key) {
+        if (grouping == null) {
+            return;
+        }
+        Object group = grouping.apply(key);
+        Set<K> keys = groups.get(group);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            groups.remove(group);
+        }
+    }
+
+    private record Entry<V>(V value, long weight, long expiresAt) {
+    }
+}
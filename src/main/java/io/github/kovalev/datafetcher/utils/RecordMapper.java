@@ -0,0 +1,84 @@
+package io.github.kovalev.datafetcher.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Преобразует строку результата запроса в запись через канонический конструктор.
+ * <p>
+ * Конструктор и имена компонентов разрешаются один раз на тип записи и кэшируются,
+ * поэтому отображение строки сводится к одному вызову {@link MethodHandle}.
+ *
+ * @param <R> тип записи
+ */
+public final class RecordMapper<R extends Record> {
+
+    private static final ClassValue<RecordMapper<?>> MAPPERS = new ClassValue<>() {
+        @Override
+        protected RecordMapper<?> computeValue(Class<?> type) {
+            return new RecordMapper<>(type.asSubclass(Record.class));
+        }
+    };
+
+    private final Class<R> recordType;
+    private final List<String> componentNames;
+    private final MethodHandle constructor;
+
+    private RecordMapper(Class<R> recordType) {
+        this.recordType = recordType;
+        RecordComponent[] components = recordType.getRecordComponents();
+        this.componentNames = Arrays.stream(components).map(RecordComponent::getName).toList();
+        Class<?>[] parameterTypes = Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new);
+        try {
+            MethodHandle handle = MethodHandles.privateLookupIn(recordType, MethodHandles.lookup())
+                    .findConstructor(recordType, MethodType.methodType(void.class, parameterTypes));
+            this.constructor = handle
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Недоступен канонический конструктор записи " + recordType.getName(), e);
+        }
+    }
+
+    /**
+     * Возвращает отображение для типа записи.
+     *
+     * @param recordType тип записи
+     * @param <R>        тип записи
+     * @return отображение
+     */
+    @SuppressWarnings("unchecked")
+    public static <R extends Record> RecordMapper<R> of(Class<R> recordType) {
+        return (RecordMapper<R>) MAPPERS.get(recordType);
+    }
+
+    /**
+     * Возвращает имена компонентов записи в порядке параметров канонического конструктора.
+     *
+     * @return имена компонентов
+     */
+    public List<String> componentNames() {
+        return componentNames;
+    }
+
+    /**
+     * Создаёт запись из строки результата. Лишние столбцы в конце строки (например, поля сортировки) игнорируются.
+     *
+     * @param row значения столбцов
+     * @return запись
+     */
+    public R map(Object[] row) {
+        Object[] args = row.length == componentNames.size() ? row : Arrays.copyOf(row, componentNames.size());
+        try {
+            return recordType.cast(constructor.invokeExact(args));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Ошибка создания записи " + recordType.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.kovalev.datafetcher.utils;
+
+import org.springframework.lang.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных одинаковых вычислений.
+ * <p>
+ * Если вычисление по ключу уже выполняется, вызывающий поток не запускает его повторно,
+ * а ожидает и получает тот же результат или то же исключение. Завершённые вычисления не сохраняются.
+ * Ключи распределяются по независимым сегментам со своей блокировкой, поэтому вызовы с разными ключами
+ * практически не конкурируют, а блокировка удерживается только на время регистрации вычисления.
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public final class SingleFlight<K, V> {
+
+    private final Stripe<K, V>[] stripes;
+    private final int mask;
+    private final LongAdder shared = new LongAdder();
+
+    public SingleFlight() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param concurrencyLevel ожидаемое количество одновременно вызывающих потоков,
+     *                         округляется вверх до степени двойки
+     */
+    @SuppressWarnings("unchecked")
+    public SingleFlight(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Количество сегментов должно быть положительным: " + concurrencyLevel);
+        }
+        int size = Integer.highestOneBit(Math.min(concurrencyLevel, 1 << 16) * 2 - 1);
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Выполняет вычисление или присоединяется к уже выполняющемуся с тем же ключом.
+     *
+     * @param key      ключ вычисления
+     * @param supplier вычисление
+     * @return результат вычисления
+     */
+    public V execute(@NonNull K key, @NonNull Supplier<? extends V> supplier) {
+        Stripe<K, V> stripe = stripe(key);
+        CompletableFuture<V> call;
+        boolean leader = false;
+        stripe.lock.lock();
+        try {
+            call = stripe.calls.get(key);
+            if (call == null) {
+                call = new CompletableFuture<>();
+                stripe.calls.put(key, call);
+                leader = true;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (!leader) {
+            shared.increment();
+            return join(call);
+        }
+
+        try {
+            V value = supplier.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            stripe.lock.lock();
+            try {
+                stripe.calls.remove(key, call);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Количество вызовов, получивших результат чужого вычисления.
+     */
+    public long shared() {
+        return shared.sum();
+    }
+
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Stripe<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<K, CompletableFuture<V>> calls = new HashMap<>();
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.DatabaseTest;
+import io.github.kovalev.datafetcher.domain.Post;
+import io.github.kovalev.datafetcher.domain.User;
+import io.github.kovalev.datafetcher.domain.User_;
+import io.github.kovalev.datafetcher.utils.AttributeNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncDataFetcherTest extends DatabaseTest {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void oneAndPageAsync() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(5).stream()
+                        .peek(entityManager::persist)
+                        .toList());
+        User user = users.getFirst();
+        transactionalExecutor.executeWithInNewTransaction(() -> entityManager.persist(postGenerator.one(user)));
+
+        AsyncDataFetcher<User, UUID> asyncFetcher = new AsyncDataFetcher<>(userDataFetcher, transactionManager, 2);
+
+        CompletableFuture<Optional<User>> one = asyncFetcher.oneAsync(user.getId(),
+                List.of(new AttributeNode(User_.POSTS, null)));
+        CompletableFuture<Page<User>> page = asyncFetcher.pageAsync(null, PageRequest.of(0, 3, Sort.by(User_.ID)),
+                List.of());
+
+        assertThat(one.join()).contains(user);
+        assertThat(one.join().get().getPosts()).extracting(Post::getTitle).isNotEmpty();
+        assertThat(page.join().getTotalElements()).isEqualTo(5);
+        assertThat(page.join().getContent()).hasSize(3);
+    }
+
+    @Test
+    void concurrencyIsLimited() {
+        transactionalExecutor.executeWithInNewTransaction(() -> userGenerator.list(3).forEach(entityManager::persist));
+
+        AsyncDataFetcher<User, UUID> asyncFetcher = new AsyncDataFetcher<>(userDataFetcher, transactionManager, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Long>> futures = IntStream.range(0, 8)
+                .mapToObj(i -> asyncFetcher.supplyAsync(fetcher -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        return (long) fetcher.fetchAllIds(null).size();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }))
+                .toList();
+
+        assertThat(futures).allSatisfy(future -> assertThat(future.join()).isEqualTo(3L));
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.kovalev.datafetcher.services;
+
+import io.github.kovalev.datafetcher.domain.User;
+import io.github.kovalev.datafetcher.domain.User_;
+import io.github.kovalev.datafetcher.utils.AttributeNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BatchingDataFetcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Mock
+    private DataFetcher<User, UUID> dataFetcher;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void callsWithinWindowAreBatchedAndDeduplicated() {
+        User first = user();
+        User second = user();
+        UUID missing = UUID.randomUUID();
+        when(dataFetcher.fetchAllByIds(any(), anyList())).thenReturn(List.of(first, second));
+        BatchingDataFetcher<User, UUID> batching = new BatchingDataFetcher<>(dataFetcher, User::getId,
+                transactionManager, scheduler, 100, Duration.ofSeconds(10));
+
+        CompletableFuture<Optional<User>> firstFuture = batching.one(first.getId());
+        CompletableFuture<Optional<User>> duplicate = batching.one(first.getId());
+        CompletableFuture<Optional<User>> secondFuture = batching.one(second.getId());
+        CompletableFuture<Optional<User>> missingFuture = batching.one(missing);
+        batching.dispatch();
+
+        assertThat(firstFuture.join()).contains(first);
+        assertThat(duplicate).isSameAs(firstFuture);
+        assertThat(secondFuture.join()).contains(second);
+        assertThat(missingFuture.join()).isEmpty();
+
+        ArgumentCaptor<Collection<UUID>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(dataFetcher, times(1)).fetchAllByIds(ids.capture(), eq(List.of()));
+        assertThat(ids.getValue()).containsExactly(first.getId(), second.getId(), missing);
+    }
+
+    @Test
+    void batchIsDispatchedWhenFullOrAfterWait() {
+        User first = user();
+        User second = user();
+        User third = user();
+        when(dataFetcher.fetchAllByIds(any(), anyList()))
+                .thenReturn(List.of(first, second))
+                .thenReturn(List.of(third));
+        BatchingDataFetcher<User, UUID> batching = new BatchingDataFetcher<>(dataFetcher, User::getId,
+                transactionManager, scheduler, 2, Duration.ofMillis(20));
+
+        CompletableFuture<Optional<User>> firstFuture = batching.one(first.getId());
+        CompletableFuture<Optional<User>> secondFuture = batching.one(second.getId());
+        CompletableFuture<Optional<User>> thirdFuture = batching.one(third.getId());
+
+        assertThat(firstFuture.join()).contains(first);
+        assertThat(secondFuture.join()).contains(second);
+        assertThat(thirdFuture.join()).contains(third);
+        verify(dataFetcher, times(2)).fetchAllByIds(any(), anyList());
+    }
+
+    @Test
+    void batchesAreSeparatedByGraph() {
+        User user = user();
+        List<AttributeNode> posts = List.of(new AttributeNode(User_.POSTS, null));
+        when(dataFetcher.fetchAllByIds(any(), anyList())).thenReturn(List.of(user));
+        BatchingDataFetcher<User, UUID> batching = new BatchingDataFetcher<>(dataFetcher, User::getId,
+                transactionManager, scheduler, 100, Duration.ofSeconds(10));
+
+        CompletableFuture<Optional<User>> plain = batching.one(user.getId());
+        CompletableFuture<Optional<User>> withPosts = batching.one(user.getId(), posts);
+        batching.close();
+
+        assertThat(plain.join()).contains(user);
+        assertThat(withPosts.join()).contains(user);
+        verify(dataFetcher).fetchAllByIds(any(), eq(List.of()));
+        verify(dataFetcher).fetchAllByIds(any(), eq(posts));
+    }
+
+    @Test
+    void failureCompletesAllFutures() {
+        when(dataFetcher.fetchAllByIds(any(), anyList())).thenThrow(new IllegalStateException("ошибка"));
+        BatchingDataFetcher<User, UUID> batching = new BatchingDataFetcher<>(dataFetcher, User::getId,
+                transactionManager, scheduler, 100, Duration.ofMillis(10));
+
+        CompletableFuture<Optional<User>> future = batching.one(UUID.randomUUID());
+
+        assertThatThrownBy(future::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void batchIsLoadedOffTheSchedulerInReadOnlyTransaction() {
+        User user = user();
+        AtomicReference<Thread> loader = new AtomicReference<>();
+        when(dataFetcher.fetchAllByIds(any(), anyList())).thenAnswer(invocation -> {
+            loader.set(Thread.currentThread());
+            return List.of(user);
+        });
+        BatchingDataFetcher<User, UUID> batching = new BatchingDataFetcher<>(dataFetcher, User::getId,
+                transactionManager, scheduler, 100, Duration.ofMillis(10));
+
+        assertThat(batching.one(user.getId()).join()).contains(user);
+
+        assertThat(loader.get().isVirtual()).isTrue();
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().isReadOnly()).isTrue();
+        assertThat(definition.getValue().getPropagationBehavior())
+                .isEqualTo(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        return user;
+    }
+}
@@ -5,37 +5,70 @@ import io.github.kovalev.datafetcher.domain.Order;
 import io.github.kovalev.datafetcher.domain.OrderItem;
 import io.github.kovalev.datafetcher.domain.OrderItem_;
 import io.github.kovalev.datafetcher.domain.Post;
+import io.github.kovalev.datafetcher.domain.Post_;
 import io.github.kovalev.datafetcher.domain.Product;
 import io.github.kovalev.datafetcher.domain.Product_;
 import io.github.kovalev.datafetcher.domain.User;
 import io.github.kovalev.datafetcher.domain.User_;
+import io.github.kovalev.datafetcher.testutils.CommentGenerator;
 import io.github.kovalev.datafetcher.utils.AttributeNode;
+import io.github.kovalev.datafetcher.utils.CountStrategy;
+import io.github.kovalev.datafetcher.utils.FetchParams;
 import io.github.kovalev.datafetcher.utils.FunctionParams;
+import io.github.kovalev.datafetcher.utils.GroupLevel;
 import io.github.kovalev.datafetcher.utils.GroupParam;
+import io.github.kovalev.datafetcher.utils.KeysetCursor;
 import io.github.kovalev.specificationhelper.specifications.And;
 import io.github.kovalev.specificationhelper.specifications.Empty;
 import io.github.kovalev.specificationhelper.specifications.Equal;
 import io.github.kovalev.specificationhelper.specifications.In;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
 import org.hibernate.LazyInitializationException;
+import org.hibernate.graph.RootGraph;
+import org.hibernate.query.sqm.tree.SqmStatement;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.IllegalTransactionStateException;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.withinPercentage;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
@@ -438,6 +471,806 @@ class DataFetcherTest extends DatabaseTest {
                 .hasMessageContaining("could not initialize proxy");
     }
 
+    @Test
+    void scrollByKeyset() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(7).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .toList());
+
+        Sort sort = Sort.by(Sort.Direction.DESC, User_.USERNAME);
+        List<UUID> expected = userDataFetcher.fetchAllIds(null, PageRequest.of(0, 7, sort.and(Sort.by(User_.ID))));
+
+        Window<User> first = userDataFetcher.scroll(null, sort, 3, ScrollPosition.keyset());
+        assertThat(first.getContent()).extracting(User::getId).containsExactlyElementsOf(expected.subList(0, 3));
+        assertThat(first.hasNext()).isTrue();
+
+        String cursor = KeysetCursor.encode(first.positionAt(first.size() - 1));
+        Window<User> second = userDataFetcher.scroll(null, sort, 3, KeysetCursor.decode(cursor));
+        assertThat(second.getContent()).extracting(User::getId).containsExactlyElementsOf(expected.subList(3, 6));
+        assertThat(second.hasNext()).isTrue();
+
+        Window<User> last = userDataFetcher.scroll(null, sort, 3,
+                (KeysetScrollPosition) second.positionAt(second.size() - 1), List.of(new AttributeNode(User_.POSTS, null)));
+        assertThat(last.getContent()).extracting(User::getId).containsExactlyElementsOf(expected.subList(6, 7));
+        assertThat(last.hasNext()).isFalse();
+        assertThat(userIds).containsAll(expected);
+
+        Window<User> backward = userDataFetcher.scroll(null, sort, 3,
+                ((KeysetScrollPosition) second.positionAt(0)).backward());
+        assertThat(backward.getContent()).extracting(User::getId).containsExactlyElementsOf(expected.subList(0, 3));
+    }
+
+    @Test
+    void scrollPositionsSkipRowsDeletedBetweenQueries() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(4).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+        // Строка удаляется после запроса позиций, но до загрузки сущностей по идентификаторам
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .metrics(new FetchMetrics() {
+                    @Override
+                    public void ids(Class<?> entityClass, int ids) {
+                        jdbcTemplate.update("delete from users where id = ?", userIds.get(1));
+                    }
+                });
+
+        Window<User> window = fetcher.scroll(null, Sort.by(User_.ID), 3, ScrollPosition.keyset());
+
+        assertThat(window.getContent()).extracting(User::getId)
+                .containsExactly(userIds.get(0), userIds.get(2));
+        assertThat(((KeysetScrollPosition) window.positionAt(1)).getKeys())
+                .containsEntry(User_.ID, userIds.get(2));
+    }
+
+    @Test
+    void streamWithinTransaction() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(5).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() -> {
+            try (Stream<User> stream = userDataFetcher.stream(null, Sort.by(User_.ID),
+                    List.of(new AttributeNode(User_.POSTS, null)))) {
+                return stream.toList();
+            }
+        });
+        assertThat(users).extracting(User::getId).containsExactlyInAnyOrderElementsOf(userIds);
+        assertThat(users).allSatisfy(user -> assertThat(entityManager.contains(user)).isFalse());
+
+        List<UUID> streamedIds = transactionalExecutor.executeWithInNewTransaction(() -> {
+            try (Stream<UUID> stream = userDataFetcher.streamAllIds(new In<>(userIds.subList(0, 3), User_.ID))) {
+                return stream.toList();
+            }
+        });
+        assertThat(streamedIds).containsExactlyInAnyOrderElementsOf(userIds.subList(0, 3));
+    }
+
+    @Test
+    void streamKeepsCallerPersistenceContext() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(5).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .toList());
+
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            User changed = entityManager.find(User.class, userIds.getFirst());
+            changed.setUsername("changed");
+            try (Stream<User> stream = userDataFetcher.stream(null, Sort.by(User_.ID))) {
+                assertThat(stream.count()).isEqualTo(5);
+            }
+            // Поток отсоединяет только свои сущности, изменения вызывающего кода остаются в контексте
+            assertThat(entityManager.contains(changed)).isTrue();
+        });
+
+        assertThat(jdbcTemplate.queryForObject("select username from users where id = ?", String.class,
+                userIds.getFirst())).isEqualTo("changed");
+    }
+
+    @Test
+    void streamWithoutTransactionShouldFail() {
+        assertThatThrownBy(() -> userDataFetcher.streamAllIds(null))
+                .isInstanceOf(IllegalTransactionStateException.class);
+    }
+
+    @Test
+    void fetchProjection() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                Stream.iterate(0, i -> i + 1).limit(5)
+                        .map(i -> {
+                            User user = userGenerator.one();
+                            user.setUsername("user_" + i);
+                            entityManager.persist(user);
+                            return user;
+                        })
+                        .toList());
+        User author = users.getFirst();
+        Post post = postGenerator.one(author);
+        transactionalExecutor.executeWithInNewTransaction(() -> entityManager.persist(post));
+
+        List<UserView> views = userDataFetcher.fetchProjection(UserView.class, null,
+                PageRequest.of(0, 3, Sort.by(User_.USERNAME)));
+        assertThat(views).containsExactlyElementsOf(users.subList(0, 3).stream()
+                .map(user -> new UserView(user.getId(), user.getUsername()))
+                .toList());
+
+        DataFetcher<Post, UUID> postFetcher = new DataFetcher<>(entityManager, Post.class, Post::getId,
+                new EntityGraphFactory(entityManager));
+        List<PostView> postViews = postFetcher.fetchProjection(PostView.class, null, Pageable.unpaged(),
+                List.of("title", "author.username"));
+        assertThat(postViews).containsExactly(new PostView(post.getTitle(), author.getUsername()));
+
+        assertThatThrownBy(() -> postFetcher.fetchProjection(PostView.class, null, Pageable.unpaged(),
+                List.of("title")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    record UserView(UUID id, String username) {
+    }
+
+    record PostView(String title, String authorName) {
+    }
+
+    @Test
+    void metricsAreRecorded() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(3).stream()
+                        .peek(entityManager::persist)
+                        .toList());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .metrics(new MicrometerFetchMetrics(registry));
+
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            fetcher.page(null, PageRequest.of(0, 2, Sort.by(User_.ID)), List.of(new AttributeNode(User_.POSTS, null)));
+            fetcher.page(null, PageRequest.of(0, 2, Sort.by(User_.ID)),
+                    List.of(new AttributeNode(User_.COMMENTS, null)));
+            fetcher.list(null, Sort.unsorted(), User.USER_WITH_POSTS);
+            fetcher.one(users.getFirst().getId());
+            fetcher.count(fetcher.prepare(null, Sort.unsorted(), List.of()), Map.of());
+            List<GroupParam> byUsername = List.of(new GroupParam(User_.USERNAME));
+            List<FunctionParams> userCount = List.of(new FunctionParams("users", "count", Long.class,
+                    UnaryOperator.identity(), User_.ID));
+            fetcher.groups(null, PageRequest.of(0, 10), byUsername, Function.identity(), userCount);
+            fetcher.mapGroups(null, PageRequest.of(0, 10), byUsername, userCount, row -> row.get("users"));
+        });
+
+        // Графы из дерева полей делят один тег, чтобы число временных рядов не зависело от форм выборки
+        Timer page = registry.get("data.fetcher.operation")
+                .tags("entity", "User", "operation", "page", "graph", "dynamic")
+                .timer();
+        assertThat(page.count()).isEqualTo(2);
+        assertThat(registry.get("data.fetcher.operation")
+                .tags("operation", "list", "graph", User.USER_WITH_POSTS).timer().count()).isEqualTo(1);
+        assertThat(registry.get("data.fetcher.operation")
+                .tags("operation", "count", "graph", "none").timer().count()).isEqualTo(1);
+        assertThat(registry.get("data.fetcher.operation").tags("operation", "one").timer().count()).isEqualTo(1);
+        assertThat(registry.get("data.fetcher.operation").tags("operation", "groups").timer().count()).isEqualTo(1);
+        assertThat(registry.get("data.fetcher.operation").tags("operation", "mapGroups").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("data.fetcher.rows").tags("operation", "page").summary().totalAmount()).isEqualTo(4);
+        assertThat(registry.get("data.fetcher.ids").summary().max()).isEqualTo(2);
+        assertThat(registry.get("data.fetcher.page.phase").timers())
+                .extracting(timer -> timer.getId().getTag("phase"))
+                .containsExactlyInAnyOrder("count", "ids", "entities");
+    }
+
+    @Test
+    void preparedFetch() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(3).stream()
+                        .peek(user -> user.setUsername("user_" + UUID.randomUUID()))
+                        .peek(entityManager::persist)
+                        .toList());
+        User author = users.getFirst();
+        transactionalExecutor.executeWithInNewTransaction(() ->
+                postGenerator.list(2, author).forEach(entityManager::persist));
+
+        PreparedFetch<User> byUsername = userDataFetcher.prepare(
+                (root, query, cb) -> cb.equal(root.get(User_.USERNAME), cb.parameter(String.class, "username")),
+                Sort.by(User_.ID),
+                List.of(new AttributeNode(User_.POSTS, null)));
+        String template = ((SqmStatement<?>) byUsername.getQuery()).toHqlString();
+
+        List<User> authors = userDataFetcher.list(byUsername, Map.of("username", author.getUsername()));
+        assertThat(authors).containsExactly(author);
+        assertThat(authors.getFirst().getPosts()).hasSize(2);
+
+        assertThat(userDataFetcher.one(byUsername, Map.of("username", users.get(1).getUsername())))
+                .contains(users.get(1));
+        assertThat(userDataFetcher.one(byUsername, Map.of("username", "missing"))).isEmpty();
+        assertThat(userDataFetcher.count(byUsername, Map.of("username", author.getUsername()))).isEqualTo(1);
+
+        // Один шаблон выполняется одновременно в разных сессиях с разными значениями параметров
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<CompletableFuture<List<User>>> futures = IntStream.range(0, 40)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() ->
+                            transactionalExecutor.executeWithInNewTransaction(() -> userDataFetcher.list(byUsername,
+                                    Map.of("username", users.get(i % users.size()).getUsername()))), pool))
+                    .toList();
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).join()).containsExactly(users.get(i % users.size()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // Выполнения работают с копиями дерева, сам шаблон не изменяется
+        assertThat(((SqmStatement<?>) byUsername.getQuery()).toHqlString()).isEqualTo(template);
+    }
+
+    @Test
+    void separateCollectionFetches() {
+        CommentGenerator commentGenerator = new CommentGenerator(new Random());
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() -> {
+            List<User> persisted = userGenerator.list(2);
+            persisted.forEach(entityManager::persist);
+            for (User user : persisted) {
+                for (Post post : postGenerator.list(3, user)) {
+                    entityManager.persist(post);
+                    commentGenerator.list(2, user, post).forEach(entityManager::persist);
+                }
+            }
+            return persisted;
+        });
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .separateCollectionFetches(true);
+        List<AttributeNode> attributeNodes = List.of(
+                new AttributeNode(User_.COMMENTS, null),
+                new AttributeNode(User_.POSTS, List.of(
+                        new AttributeNode(Post_.AUTHOR, null),
+                        new AttributeNode(Post_.COMMENTS, null)
+                ))
+        );
+
+        List<User> result = transactionalExecutor.executeWithInNewTransaction(() -> fetcher.fetchAllByIds(
+                users.stream().map(User::getId).toList(), attributeNodes));
+
+        assertThat(result).extracting(User::getId).containsExactlyElementsOf(users.stream().map(User::getId).toList());
+        assertThat(result).allSatisfy(user -> {
+            assertThat(user.getComments()).hasSize(6);
+            assertThat(user.getPosts()).hasSize(3);
+            assertThat(user.getPosts()).allSatisfy(post -> {
+                assertThat(post.getAuthor().getUsername()).isEqualTo(user.getUsername());
+                assertThat(post.getComments()).hasSize(2);
+            });
+        });
+
+        Optional<User> one = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.one(users.getFirst().getId(), attributeNodes));
+        assertThat(one).isPresent();
+        assertThat(one.get().getPosts()).hasSize(3);
+        assertThat(one.get().getPosts().getFirst().getComments()).hasSize(2);
+    }
+
+    @Test
+    void entityCache() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(3).stream()
+                        .peek(entityManager::persist)
+                        .toList());
+        List<UUID> ids = users.stream().map(User::getId).toList();
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .entityCache(100, Duration.ofMinutes(1));
+
+        User cached = transactionalExecutor.executeWithInNewTransaction(() -> fetcher.one(ids.getFirst())).orElseThrow();
+        jdbcTemplate.update("update users set username = 'changed' where id in (?, ?)", ids.get(0), ids.get(1));
+
+        List<User> result = transactionalExecutor.executeWithInNewTransaction(() -> fetcher.fetchAllByIds(ids));
+        assertThat(result).extracting(User::getId).containsExactlyElementsOf(ids);
+        assertThat(result.getFirst()).isSameAs(cached);
+        assertThat(result.get(0).getUsername()).isEqualTo(users.get(0).getUsername());
+        assertThat(result.get(1).getUsername()).isEqualTo("changed");
+
+        Page<User> window = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(List.of(ids.getFirst()), User_.ID), PageRequest.of(0, 4),
+                        CountStrategy.window()));
+        assertThat(window.getContent()).singleElement().isSameAs(cached);
+
+        fetcher.evict(ids.getFirst());
+        assertThat(transactionalExecutor.executeWithInNewTransaction(() -> fetcher.one(ids.getFirst())))
+                .map(User::getUsername)
+                .contains("changed");
+    }
+
+    @Test
+    void graphKeysSeparateNamedAndAttributeNodeGraphs() {
+        EntityGraphFactory graphFactory = new EntityGraphFactory(entityManager);
+        EntityGraph<?> nodes = graphFactory.graphByAttributeNodes(List.of(new AttributeNode(User_.POSTS, null)),
+                User.class);
+        EntityGraph<?> named = ((RootGraph<?>) entityManager.createEntityGraph(User.class))
+                .makeRootGraph(User_.POSTS, false);
+
+        assertThat(DataFetcher.graphKey(nodes)).isEqualTo("nodes:posts");
+        assertThat(DataFetcher.graphKey(named)).isEqualTo("named:posts");
+        assertThat(DataFetcher.graphKey(null)).isEmpty();
+    }
+
+    @Test
+    void fingerprintsKeepBoundValuesApart() {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        Function<List<String>, QueryFingerprint> fingerprint = usernames -> {
+            CriteriaQuery<User> query = cb.createQuery(User.class);
+            Root<User> root = query.from(User.class);
+            return QueryFingerprint.of(query.select(root).where(root.get(User_.USERNAME).in(usernames)));
+        };
+
+        assertThat(fingerprint.apply(List.of("a", "b"))).isEqualTo(fingerprint.apply(List.of("a", "b")));
+        // Без параметров оба запроса выводились бы в HQL как "username in (a, b)"
+        assertThat(fingerprint.apply(List.of("a, b"))).isNotEqualTo(fingerprint.apply(List.of("a", "b")));
+    }
+
+    @Test
+    void resultCache() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(4).stream()
+                        .peek(entityManager::persist)
+                        .toList());
+        List<UUID> ids = users.stream().map(User::getId).toList();
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .resultCache(1000, Duration.ofMinutes(1));
+        PageRequest pageRequest = PageRequest.of(0, 10, Sort.by(User_.ID));
+
+        Page<User> first = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), pageRequest));
+        jdbcTemplate.update("delete from users where id = ?", ids.getFirst());
+
+        Page<User> cached = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), pageRequest));
+        assertThat(cached).isSameAs(first);
+        assertThat(cached.getTotalElements()).isEqualTo(4);
+
+        Page<User> otherFilter = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids.subList(0, 2), User_.ID), pageRequest));
+        assertThat(otherFilter.getTotalElements()).isEqualTo(1);
+
+        // Граф из сопоставления и граф из дерева полей с теми же полями кэшируются раздельно
+        Page<User> namedGraph = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), pageRequest, User.USER_WITH_POSTS));
+        Page<User> nodesGraph = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), pageRequest, List.of(new AttributeNode(User_.POSTS, null))));
+        assertThat(namedGraph).isNotSameAs(cached);
+        assertThat(nodesGraph).isNotSameAs(namedGraph).isNotSameAs(cached);
+
+        fetcher.evictAll();
+        Page<User> reloaded = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), pageRequest));
+        assertThat(reloaded.getTotalElements()).isEqualTo(3);
+
+        // Несохранённые изменения видны только своей транзакции: кэш не используется и не пополняется
+        Page<User> dirty = transactionalExecutor.executeWithInNewTransaction(() -> {
+            entityManager.remove(entityManager.find(User.class, ids.get(1)));
+            return fetcher.page(new In<>(ids, User_.ID), pageRequest);
+        });
+        assertThat(dirty.getTotalElements()).isEqualTo(2);
+        Page<User> afterDirty = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), pageRequest));
+        assertThat(afterDirty).isSameAs(reloaded);
+    }
+
+    @Test
+    void countCache() {
+        List<User> users = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(4).stream()
+                        .peek(entityManager::persist)
+                        .toList());
+        List<UUID> ids = users.stream().map(User::getId).toList();
+        EntityVersions versions = new EntityVersions().bindTo(entityManager.getEntityManagerFactory());
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .countCache(100, Duration.ofMinutes(1), versions);
+
+        Page<User> first = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), PageRequest.of(0, 2, Sort.by(User_.ID))));
+        assertThat(first.getTotalElements()).isEqualTo(4);
+
+        // Удаление в обход Hibernate не меняет версию, подсчёт берётся из кэша
+        jdbcTemplate.update("delete from users where id = ?", ids.getFirst());
+        Page<User> second = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), PageRequest.of(1, 2, Sort.by(User_.ID))));
+        assertThat(second.getTotalElements()).isEqualTo(4);
+
+        versions.bump(User.class);
+        Page<User> afterBump = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), PageRequest.of(0, 2, Sort.by(User_.ID))));
+        assertThat(afterBump.getTotalElements()).isEqualTo(3);
+
+        transactionalExecutor.executeWithInNewTransaction(() ->
+                entityManager.remove(entityManager.find(User.class, ids.getLast())));
+        Page<User> afterCommit = transactionalExecutor.executeWithInNewTransaction(() ->
+                fetcher.page(new In<>(ids, User_.ID), PageRequest.of(0, 2, Sort.by(User_.ID))));
+        assertThat(afterCommit.getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    void parallelScan() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(50).stream()
+                        .peek(entityManager::persist)
+                        .peek(user -> postGenerator.list(2, user).forEach(entityManager::persist))
+                        .map(User::getId)
+                        .toList());
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .parallelScan(4, ForkJoinPool.commonPool());
+        Specification<User> specification = new In<>(userIds.subList(0, 40), User_.ID);
+
+        List<UUID> ids = fetcher.fetchAllIdsParallel(specification);
+        assertThat(ids).containsExactlyInAnyOrderElementsOf(userIds.subList(0, 40))
+                .doesNotHaveDuplicates();
+
+        try (Stream<UUID> stream = fetcher.parallelStreamAllIds(null)) {
+            assertThat(stream.isParallel()).isTrue();
+            assertThat(stream.toList()).containsExactlyInAnyOrderElementsOf(userIds);
+        }
+
+        List<User> users = fetcher.listParallel(specification, List.of(new AttributeNode(User_.POSTS, null)));
+        assertThat(users).extracting(User::getId).containsExactlyElementsOf(ids);
+        assertThat(users).allSatisfy(user -> assertThat(user.getPosts()).hasSize(2));
+
+        assertThat(fetcher.fetchAllIdsParallel(new Equal<>(UUID.randomUUID(), User_.ID))).isEmpty();
+    }
+
+    @Test
+    void parallelMapping() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(40).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .toList());
+        FetchParams<User, String> params = new FetchParams<>(
+                null,
+                PageRequest.of(0, 100, Sort.by(User_.USERNAME)),
+                row -> row.get(1) + "@" + Thread.currentThread().getName(),
+                List.of(List.of(User_.ID), List.of(User_.USERNAME))
+        );
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                    new EntityGraphFactory(entityManager))
+                    .parallelMapping(pool, 10);
+
+            List<String> sequential = userDataFetcher.fetchFields(params);
+            List<String> parallel = fetcher.fetchFields(params);
+
+            assertThat(parallel).hasSize(40);
+            assertThat(parallel).extracting(value -> value.substring(0, value.indexOf('@')))
+                    .containsExactlyElementsOf(sequential.stream()
+                            .map(value -> value.substring(0, value.indexOf('@')))
+                            .toList());
+            assertThat(parallel).allSatisfy(value -> assertThat(value).contains("@ForkJoinPool-"));
+
+            // Ниже порога строки преобразуются в вызывающем потоке
+            FetchParams<User, String> small = new FetchParams<>(new In<>(userIds.subList(0, 5), User_.ID),
+                    params.pageable(), row -> Thread.currentThread().getName(), params.fields());
+            assertThat(fetcher.fetchFields(small)).hasSize(5).containsOnly(Thread.currentThread().getName());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void distinctOnlyWithToManyJoins() {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> rootOnly = cb.createTupleQuery();
+        rootOnly.from(User.class);
+        assertThat(QueryJoins.multipliesRows(rootOnly)).isFalse();
+
+        CriteriaQuery<Tuple> toOne = cb.createTupleQuery();
+        toOne.from(Post.class).join(Post_.AUTHOR);
+        assertThat(QueryJoins.multipliesRows(toOne)).isFalse();
+
+        CriteriaQuery<Tuple> toMany = cb.createTupleQuery();
+        toMany.from(User.class).join(User_.POSTS);
+        assertThat(QueryJoins.multipliesRows(toMany)).isTrue();
+
+        CriteriaQuery<Tuple> nestedFetch = cb.createTupleQuery();
+        nestedFetch.from(Post.class).fetch(Post_.AUTHOR).fetch(User_.COMMENTS);
+        assertThat(QueryJoins.multipliesRows(nestedFetch)).isTrue();
+
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(3).stream()
+                        .peek(entityManager::persist)
+                        .peek(user -> postGenerator.list(3, user).forEach(entityManager::persist))
+                        .map(User::getId)
+                        .toList());
+        Specification<User> withPosts = (root, query, builder) ->
+                builder.isNotNull(root.join(User_.POSTS).get(Post_.ID));
+
+        assertThat(userDataFetcher.fetchAllIds(withPosts)).containsExactlyInAnyOrderElementsOf(userIds);
+        assertThat(userDataFetcher.page(withPosts, PageRequest.of(0, 2, Sort.by(User_.ID))).getTotalElements())
+                .isEqualTo(3);
+        assertThat(userDataFetcher.fetchAllIds(new In<>(userIds, User_.ID)))
+                .containsExactlyInAnyOrderElementsOf(userIds);
+        assertThat(userDataFetcher.count(userDataFetcher.prepare(withPosts, Sort.unsorted(), List.of()), Map.of()))
+                .isEqualTo(3);
+
+        // distinct, заданный спецификацией явно, не снимается и без соединений коллекций
+        jdbcTemplate.update("update users set username = 'same'");
+        Specification<User> distinct = (root, query, builder) -> {
+            query.distinct(true);
+            return null;
+        };
+        assertThat(userDataFetcher.fetchFields(new FetchParams<User, Object>(distinct,
+                PageRequest.of(0, 10, Sort.by(User_.USERNAME)), List::getFirst, List.of(List.of(User_.USERNAME)))))
+                .containsExactly("same");
+
+        // Неуникальные поля без соединений коллекций по-прежнему возвращаются без повторов
+        assertThat(userDataFetcher.fetchFields(new FetchParams<User, Object>(null,
+                PageRequest.of(0, 10, Sort.by(User_.USERNAME)), List::getFirst, List.of(List.of(User_.USERNAME)))))
+                .containsExactly("same");
+        assertThat(userDataFetcher.fetchProjection(UsernameView.class, null, Pageable.unpaged(),
+                List.of(User_.USERNAME)))
+                .containsExactly(new UsernameView("same"));
+        // С идентификатором среди полей строки уникальны и без distinct
+        assertThat(userDataFetcher.fetchProjection(UserView.class, null, PageRequest.of(0, 10, Sort.by(User_.ID))))
+                .extracting(UserView::id)
+                .containsExactlyInAnyOrderElementsOf(userIds);
+    }
+
+    record UsernameView(String username) {
+    }
+
+    @Test
+    void pageAndSliceWithoutCollectionFetches() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(5).stream()
+                        .peek(entityManager::persist)
+                        .peek(user -> postGenerator.list(2, user).forEach(entityManager::persist))
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DataFetcher<User, UUID> fetcher = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager))
+                .metrics(new MicrometerFetchMetrics(registry));
+
+        Page<User> page = fetcher.page(null, PageRequest.of(1, 2, Sort.by(User_.ID)));
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(2, 4));
+        assertThat(page.getContent()).allSatisfy(user -> assertThat(entityManager.contains(user)).isFalse());
+        assertThat(registry.get("data.fetcher.page.phase").timers())
+                .extracting(timer -> timer.getId().getTag("phase"))
+                .containsExactlyInAnyOrder("count", "entities");
+
+        Slice<User> middle = fetcher.slice(null, PageRequest.of(1, 2, Sort.by(User_.ID)));
+        assertThat(middle.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(2, 4));
+        assertThat(middle.hasNext()).isTrue();
+        Slice<User> last = fetcher.slice(null, PageRequest.of(2, 2, Sort.by(User_.ID)));
+        assertThat(last.getContent()).extracting(User::getId).containsExactly(userIds.get(4));
+        assertThat(last.hasNext()).isFalse();
+
+        DataFetcher<Post, UUID> postFetcher = new DataFetcher<>(entityManager, Post.class, Post::getId,
+                new EntityGraphFactory(entityManager));
+        Specification<Post> byAuthors = (root, query, cb) -> root.get(Post_.AUTHOR).get(User_.ID).in(userIds);
+        Page<Post> posts = postFetcher.page(byAuthors, PageRequest.of(0, 4, Sort.by(Post_.ID)),
+                List.of(new AttributeNode(Post_.AUTHOR, null)));
+        assertThat(posts.getTotalElements()).isEqualTo(10);
+        assertThat(posts.getContent()).hasSize(4)
+                .allSatisfy(post -> assertThat(post.getAuthor().getUsername()).isNotNull());
+
+        // Соединение коллекции в спецификации оставляет загрузку по идентификаторам
+        Specification<User> withPosts = (root, query, cb) -> cb.isNotNull(root.join(User_.POSTS).get(Post_.ID));
+        Slice<User> joined = fetcher.slice(withPosts, PageRequest.of(0, 4, Sort.by(User_.ID)));
+        assertThat(joined.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(0, 4));
+        assertThat(joined.hasNext()).isTrue();
+    }
+
+    @Test
+    void failedEstimateKeepsTransactionUsable() {
+        transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(3).forEach(entityManager::persist));
+
+        Page<User> page = transactionalExecutor.executeWithInNewTransaction(() -> {
+            // Ошибка плана откатывается к точке сохранения, и подсчёт выполняется в той же транзакции
+            assertThat(new RowCountEstimator().explain(entityManager, "explain select * from missing_table"))
+                    .isEmpty();
+            return userDataFetcher.page(null, PageRequest.of(0, 2, Sort.by(User_.ID)), CountStrategy.exact());
+        });
+
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(page.getContent()).hasSize(2);
+    }
+
+    @Test
+    void pageWithCountStrategies() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(10).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+
+        PageRequest firstPage = PageRequest.of(0, 4, Sort.by(User_.ID));
+        PageRequest lastPage = PageRequest.of(2, 4, Sort.by(User_.ID));
+
+        Page<User> exact = userDataFetcher.page(null, firstPage, CountStrategy.exact());
+        assertThat(exact.getTotalElements()).isEqualTo(10);
+        assertThat(exact.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(0, 4));
+
+        Page<User> capped = userDataFetcher.page(null, firstPage, CountStrategy.capped(5));
+        assertThat(capped.getTotalElements()).isEqualTo(6);
+        assertThat(capped.getContent()).hasSize(4);
+        assertThat(userDataFetcher.page(null, firstPage, CountStrategy.capped(20)).getTotalElements()).isEqualTo(10);
+
+        Page<User> skipped = userDataFetcher.page(null, lastPage, List.of(), CountStrategy.skipIfLastPage());
+        assertThat(skipped.getTotalElements()).isEqualTo(10);
+        assertThat(skipped.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(8, 10));
+
+        Page<User> beyond = userDataFetcher.page(null, PageRequest.of(5, 4, Sort.by(User_.ID)),
+                CountStrategy.skipIfLastPage());
+        assertThat(beyond.getContent()).isEmpty();
+        assertThat(beyond.getTotalElements()).isEqualTo(10);
+    }
+
+    @Test
+    void pageWithEstimatedCount() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(200).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+        jdbcTemplate.execute("analyze users");
+        PageRequest firstPage = PageRequest.of(0, 4, Sort.by(User_.ID));
+
+        Page<User> estimated = userDataFetcher.page(null, firstPage, CountStrategy.estimated());
+        assertThat(estimated.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(0, 4));
+        assertThat(estimated.getTotalElements()).isCloseTo(200L, withinPercentage(10));
+
+        Page<User> filtered = userDataFetcher.page(new In<>(userIds.subList(0, 50), User_.ID), firstPage,
+                CountStrategy.estimated());
+        assertThat(filtered.getTotalElements()).isCloseTo(50L, withinPercentage(10));
+
+        // План считает строки соединения, а не пользователей, поэтому с соединением коллекции считается точно
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            for (UUID id : userIds.subList(0, 3)) {
+                postGenerator.list(5, entityManager.find(User.class, id)).forEach(entityManager::persist);
+            }
+        });
+        jdbcTemplate.execute("analyze posts");
+        Specification<User> withPosts = (root, query, cb) -> cb.isNotNull(root.join(User_.POSTS).get(Post_.ID));
+        assertThat(userDataFetcher.page(withPosts, firstPage, CountStrategy.estimated()).getTotalElements())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void pageWithWindowCount() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(10).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+
+        PageRequest firstPage = PageRequest.of(0, 4, Sort.by(User_.ID));
+        PageRequest lastPage = PageRequest.of(2, 4, Sort.by(User_.ID));
+
+        Page<User> window = userDataFetcher.page(null, firstPage, CountStrategy.window());
+        assertThat(window.getTotalElements()).isEqualTo(10);
+        assertThat(window.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(0, 4));
+        assertThat(window.getContent()).allSatisfy(user -> assertThat(entityManager.contains(user)).isFalse());
+
+        Page<User> windowWithGraph = userDataFetcher.page(new In<>(userIds, User_.ID), lastPage,
+                List.of(new AttributeNode(User_.POSTS, null)), CountStrategy.window());
+        assertThat(windowWithGraph.getTotalElements()).isEqualTo(10);
+        assertThat(windowWithGraph.getContent()).extracting(User::getId)
+                .containsExactlyElementsOf(userIds.subList(8, 10));
+        assertThat(windowWithGraph.getContent()).allSatisfy(user -> assertThat(user.getPosts()).isEmpty());
+
+        Page<User> windowBeyond = userDataFetcher.page(null, PageRequest.of(5, 4, Sort.by(User_.ID)),
+                CountStrategy.window());
+        assertThat(windowBeyond.getContent()).isEmpty();
+        assertThat(windowBeyond.getTotalElements()).isEqualTo(10);
+
+        Specification<User> withPosts = (root, query, cb) -> cb.isNotNull(root.join(User_.POSTS).get(Post_.ID));
+        assertThat(userDataFetcher.page(withPosts, firstPage, CountStrategy.window()).getTotalElements()).isZero();
+    }
+
+    @Test
+    void fetchAllByIdsInChunksPreservesOrder() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(7).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .toList());
+        List<UUID> requested = List.of(userIds.get(6), userIds.get(0), userIds.get(3), UUID.randomUUID(),
+                userIds.get(5), userIds.get(0), userIds.get(1));
+
+        DataFetcher<User, UUID> chunked = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager)).idsChunkSize(2);
+        DataFetcher<User, UUID> arrayBound = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager)).idsChunkSize(4).arrayIdBinding(true);
+
+        List<UUID> expected = List.of(userIds.get(6), userIds.get(0), userIds.get(3), userIds.get(5), userIds.get(1));
+        assertThat(transactionalExecutor.executeWithInNewTransaction(() -> chunked.fetchAllByIds(requested)))
+                .extracting(User::getId)
+                .containsExactlyElementsOf(expected);
+        assertThat(transactionalExecutor.executeWithInNewTransaction(() -> arrayBound.fetchAllByIds(requested)))
+                .extracting(User::getId)
+                .containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void paddedIdsHavePowerOfTwoSize() {
+        assertThat(DataFetcher.padded(List.of(1))).containsExactly(1);
+        assertThat(DataFetcher.padded(List.of(1, 2, 3))).containsExactly(1, 2, 3, 3);
+        assertThat(DataFetcher.padded(List.of(1, 2, 3, 4))).containsExactly(1, 2, 3, 4);
+        assertThat(DataFetcher.padded(List.of(1, 2, 3, 4, 5))).hasSize(8).endsWith(5, 5, 5, 5);
+    }
+
+    @Test
+    void pageWithConcurrentCount() {
+        List<UUID> userIds = transactionalExecutor.executeWithInNewTransaction(() ->
+                userGenerator.list(6).stream()
+                        .peek(entityManager::persist)
+                        .map(User::getId)
+                        .sorted(Comparator.comparing(UUID::toString))
+                        .toList());
+
+        DataFetcher<User, UUID> concurrent = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager)).concurrentCount(true);
+
+        Page<User> page = transactionalExecutor.executeWithInNewTransaction(() ->
+                concurrent.page(null, PageRequest.of(1, 4, Sort.by(User_.ID))));
+        assertThat(page.getTotalElements()).isEqualTo(6);
+        assertThat(page.getContent()).extracting(User::getId).containsExactlyElementsOf(userIds.subList(4, 6));
+
+        Page<User> capped = transactionalExecutor.executeWithInNewTransaction(() ->
+                concurrent.page(null, PageRequest.of(0, 2, Sort.by(User_.ID)), CountStrategy.capped(3)));
+        assertThat(capped.getTotalElements()).isEqualTo(4);
+
+        // Без свободного разрешения страница считается последовательно, не дожидаясь второго соединения
+        CountDownLatch submitted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger submissions = new AtomicInteger();
+        Executor blocked = command -> {
+            submissions.incrementAndGet();
+            submitted.countDown();
+            DataFetcher.VIRTUAL_THREADS.execute(() -> {
+                awaitUninterruptibly(release);
+                command.run();
+            });
+        };
+        DataFetcher<User, UUID> limited = new DataFetcher<>(entityManager, User.class, User::getId,
+                new EntityGraphFactory(entityManager)).concurrentCount(blocked, 1);
+        CompletableFuture<Page<User>> first = CompletableFuture.supplyAsync(() ->
+                transactionalExecutor.executeWithInNewTransaction(() ->
+                        limited.page(null, PageRequest.of(0, 4, Sort.by(User_.ID)))));
+        awaitUninterruptibly(submitted);
+
+        Page<User> sequential = transactionalExecutor.executeWithInNewTransaction(() ->
+                limited.page(null, PageRequest.of(0, 4, Sort.by(User_.ID))));
+        assertThat(sequential.getTotalElements()).isEqualTo(6);
+        assertThat(submissions).hasValue(1);
+
+        release.countDown();
+        assertThat(first.join().getTotalElements()).isEqualTo(6);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Test
     void groups() {
         record OrderSummaryDto(Long orderId,
@@ -500,6 +1333,168 @@ class DataFetcherTest extends DatabaseTest {
         });
     }
 
+    @Test
+    void rollup() {
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            List<Product> products = productGenerator.list(5);
+            products.forEach(entityManager::persist);
+
+            List<Order> orders = orderGenerator.list(3);
+            orders.forEach(entityManager::persist);
+
+            orderItemGenerator.list(15, orders, products).forEach(entityManager::persist);
+        });
+
+        List<GroupParam> groupParams = List.of(
+                new GroupParam("order.customer").alias("customer"),
+                new GroupParam("product.name").alias("product")
+        );
+        FunctionParams itemCount = new FunctionParams("itemCount", "count", Long.class,
+                value -> ((Number) value).longValue(), OrderItem_.ID);
+
+        List<GroupLevel<Map<String, ?>>> result = orderItemFetcher.rollup(
+                new Empty<>(), groupParams, Function.identity(), itemCount);
+        List<Map<String, ?>> groups = orderItemFetcher.groups(
+                new Empty<>(), groupParams, Function.identity(), itemCount);
+
+        // Детальный уровень совпадает с обычной группировкой
+        assertThat(result.stream().filter(row -> row.level() == 2).map(GroupLevel::value).toList())
+                .containsExactlyInAnyOrderElementsOf(groups);
+
+        // Промежуточный итог следует за строками своего заказчика и равен их сумме
+        long detailSum = 0;
+        for (GroupLevel<Map<String, ?>> row : result) {
+            long count = (Long) row.value().get("itemCount");
+            if (row.level() == 2) {
+                detailSum += count;
+            } else if (row.level() == 1) {
+                assertThat(row.value().get("product")).isNull();
+                assertThat(count).isEqualTo(detailSum);
+                detailSum = 0;
+            }
+        }
+
+        assertThat(result.getLast().level()).isZero();
+        assertThat(result.getLast().value().get("customer")).isNull();
+        assertThat(result.getLast().value().get("itemCount")).isEqualTo(15L);
+        assertThat(result.stream().filter(row -> row.level() == 0)).hasSize(1);
+    }
+
+    @Test
+    void rollupFallbackMatchesNativeRollup() {
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            List<Product> products = productGenerator.list(5);
+            products.forEach(entityManager::persist);
+
+            List<Order> orders = orderGenerator.list(3);
+            orders.forEach(entityManager::persist);
+
+            orderItemGenerator.list(15, orders, products).forEach(entityManager::persist);
+        });
+
+        // Числовые поля упорядочиваются одинаково в базе данных и при сортировке объединения в памяти
+        List<GroupParam> groupParams = List.of(
+                new GroupParam("order.id").alias("orderId"),
+                new GroupParam("product.id").alias("productId")
+        );
+        List<FunctionParams> functionParams = List.of(new FunctionParams("itemCount", "count", Long.class,
+                value -> ((Number) value).longValue(), OrderItem_.ID));
+
+        List<GroupLevel<Map<String, Object>>> nativeRows = new RollupQuery(entityManager, true)
+                .execute(OrderItem.class, new Empty<>(), groupParams, functionParams);
+        List<GroupLevel<Map<String, Object>>> unionRows = new RollupQuery(entityManager, false)
+                .execute(OrderItem.class, new Empty<>(), groupParams, functionParams);
+
+        assertThat(unionRows).containsExactlyElementsOf(nativeRows);
+        assertThat(nativeRows.stream().filter(row -> row.level() == 1))
+                .hasSize((int) nativeRows.stream()
+                        .filter(row -> row.level() == 2)
+                        .map(row -> row.value().get("orderId"))
+                        .distinct()
+                        .count());
+        assertThat(nativeRows.getLast().level()).isZero();
+        assertThat(nativeRows.getLast().value().get("itemCount")).isEqualTo(15L);
+    }
+
+    @Test
+    void mapGroups() {
+        record OrderSummaryDto(Long orderId, BigDecimal totalSum, Long itemCount) {
+        }
+
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            List<Product> products = productGenerator.list(5);
+            products.forEach(entityManager::persist);
+
+            List<Order> orders = orderGenerator.list(3);
+            orders.forEach(entityManager::persist);
+
+            orderItemGenerator.list(15, orders, products).forEach(entityManager::persist);
+        });
+
+        List<GroupParam> groupParams = List.of(new GroupParam("order.id").alias("orderId"));
+        List<FunctionParams> functionParams = getFunctionParams();
+        Pageable pageable = PageRequest.of(0, 10);
+
+        List<OrderSummaryDto> expected = orderItemFetcher.groups(new Empty<>(), pageable, groupParams,
+                map -> new OrderSummaryDto(
+                        (Long) map.get("orderId"),
+                        (BigDecimal) map.get("totalSum"),
+                        (Long) map.get("itemCount")
+                ), functionParams);
+
+        List<OrderSummaryDto> result = orderItemFetcher.mapGroups(new Empty<>(), pageable, groupParams,
+                functionParams, row -> new OrderSummaryDto(
+                        row.get("orderId", Long.class),
+                        row.getBigDecimal("totalSum"),
+                        row.getLong(row.indexOf("itemCount"))
+                ));
+
+        assertThat(result).hasSize(3).containsExactlyInAnyOrderElementsOf(expected);
+        assertThatThrownBy(() -> orderItemFetcher.mapGroups(new Empty<>(), groupParams, functionParams,
+                row -> row.get("unknown")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void streamGroups() {
+        transactionalExecutor.executeWithInNewTransaction(() -> {
+            List<Product> products = productGenerator.list(5);
+            products.forEach(entityManager::persist);
+
+            List<Order> orders = orderGenerator.list(4);
+            orders.forEach(entityManager::persist);
+
+            orderItemGenerator.list(20, orders, products).forEach(entityManager::persist);
+        });
+
+        List<GroupParam> groupParams = List.of(new GroupParam("order.id").alias("orderId"));
+        List<FunctionParams> functionParams = getFunctionParams();
+        Function<Map<String, ?>, List<Object>> mapper = map -> List.of(map.get("orderId"), map.get("totalSum"),
+                map.get("itemCount"));
+        List<List<Object>> expected = orderItemFetcher.groups(new Empty<>(), groupParams, mapper, functionParams);
+
+        List<List<Object>> streamed = transactionalExecutor.executeWithInNewTransaction(() -> {
+            try (Stream<List<Object>> stream = orderItemFetcher.streamGroups(new Empty<>(),
+                    Sort.unsorted(), groupParams, mapper, functionParams)) {
+                return stream.toList();
+            }
+        });
+        assertThat(streamed).containsExactlyInAnyOrderElementsOf(expected);
+
+        List<List<Object>> visited = new ArrayList<>();
+        long count = transactionalExecutor.executeWithInNewTransaction(() ->
+                orderItemFetcher.forEachGroup(new Empty<>(), Sort.unsorted(), groupParams, functionParams,
+                        row -> visited.add(List.of(row.get("orderId"), row.getBigDecimal("totalSum"),
+                                row.getLong("itemCount")))));
+        assertThat(count).isEqualTo(4);
+        assertThat(visited).containsExactlyInAnyOrderElementsOf(expected);
+
+        assertThatThrownBy(() -> orderItemFetcher.forEachGroup(new Empty<>(), Sort.unsorted(), groupParams,
+                functionParams, row -> {
+                }))
+                .isInstanceOf(IllegalTransactionStateException.class);
+    }
+
     private @NotNull List<FunctionParams> getFunctionParams() {
         UnaryOperator<Object> objectUnaryOperator = value -> Optional.ofNullable((BigDecimal) value)
                 .map(v -> v.setScale(2, RoundingMode.HALF_UP))
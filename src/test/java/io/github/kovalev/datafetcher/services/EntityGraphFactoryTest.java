@@ -18,6 +18,7 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -114,4 +115,49 @@ class EntityGraphFactoryTest {
 
         assertThat(result).isNotNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    void graphByAttributeNodes_ShouldReuseCachedGraph_ForSameShapeInAnyOrder() {
+        when(entityManager.createEntityGraph(User.class)).thenReturn(userEntityGraph);
+
+        EntityGraph<?> first = entityGraphFactory.graphByAttributeNodes(List.of(
+                new AttributeNode(User_.POSTS, null),
+                new AttributeNode(User_.COMMENTS, null)
+        ), User.class);
+        EntityGraph<?> second = entityGraphFactory.graphByAttributeNodes(List.of(
+                new AttributeNode(User_.COMMENTS, null),
+                new AttributeNode(User_.POSTS, null)
+        ), User.class);
+
+        assertThat(second).isSameAs(first);
+        verify(entityManager, times(1)).createEntityGraph(User.class);
+        assertThat(entityGraphFactory.cacheMisses()).isEqualTo(1);
+        assertThat(entityGraphFactory.cacheHits()).isEqualTo(1);
+    }
+
+    @Test
+    void graphByAttributeNodes_ShouldBuildGraphEveryTime_WhenCacheIsDisabled() {
+        when(entityManager.createEntityGraph(User.class)).thenReturn(userEntityGraph);
+        entityGraphFactory.cacheSize(0);
+
+        List<AttributeNode> fields = List.of(new AttributeNode(User_.POSTS, null));
+        entityGraphFactory.graphByAttributeNodes(fields, User.class);
+        entityGraphFactory.graphByAttributeNodes(fields, User.class);
+
+        verify(entityManager, times(2)).createEntityGraph(User.class);
+    }
+
+    @Test
+    void signature_ShouldNotDependOnAttributesOrder() {
+        String signature = EntityGraphFactory.signature(List.of(
+                new AttributeNode(User_.POSTS, List.of(
+                        new AttributeNode(Post_.COMMENTS, null),
+                        new AttributeNode(Post_.AUTHOR, null)
+                )),
+                new AttributeNode(User_.COMMENTS, null)
+        ));
+
+        assertThat(signature).isEqualTo("comments,posts(author,comments)");
+        assertThat(EntityGraphFactory.signature(List.of())).isEmpty();
+    }
+}
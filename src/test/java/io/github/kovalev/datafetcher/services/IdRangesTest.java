@@ -0,0 +1,43 @@
+package io.github.kovalev.datafetcher.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdRangesTest {
+
+    @Test
+    void splitsNumericRangeEvenly() {
+        assertThat(IdRanges.boundaries(1L, 100L, 4)).containsExactly(26L, 51L, 76L);
+        assertThat(IdRanges.boundaries(-10, 9, 2)).containsExactly(0);
+    }
+
+    @Test
+    void doesNotSplitBeyondDistinctValues() {
+        assertThat(IdRanges.boundaries(5L, 7L, 8)).containsExactly(6L, 7L);
+        assertThat(IdRanges.boundaries(5L, 5L, 8)).isEmpty();
+        assertThat(IdRanges.boundaries(1L, 100L, 1)).isEmpty();
+    }
+
+    @Test
+    void splitsUuidByUnsignedMostSignificantBits() {
+        UUID min = UUID.fromString("00000000-0000-0000-0000-000000000000");
+        UUID max = UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff");
+
+        List<Object> boundaries = IdRanges.boundaries(min, max, 4);
+
+        assertThat(boundaries).containsExactly(
+                UUID.fromString("40000000-0000-0000-0000-000000000000"),
+                UUID.fromString("80000000-0000-0000-0000-000000000000"),
+                UUID.fromString("c0000000-0000-0000-0000-000000000000")
+        );
+    }
+
+    @Test
+    void leavesOtherTypesInOneRange() {
+        assertThat(IdRanges.boundaries("a", "z", 4)).isEmpty();
+    }
+}
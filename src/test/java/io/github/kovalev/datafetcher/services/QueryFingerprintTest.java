@@ -0,0 +1,26 @@
+package io.github.kovalev.datafetcher.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryFingerprintTest {
+
+    @Test
+    void generatedAliasesAreNumberedInOrder() {
+        String first = QueryFingerprint.normalize(
+                "select alias_123 from User alias_123 join alias_123.posts alias_-45 where alias_-45.title = x");
+        String second = QueryFingerprint.normalize(
+                "select alias_9 from User alias_9 join alias_9.posts alias_77 where alias_77.title = x");
+
+        assertThat(first)
+                .isEqualTo(second)
+                .isEqualTo("select a0 from User a0 join a0.posts a1 where a1.title = x");
+    }
+
+    @Test
+    void valuesAreKept() {
+        assertThat(QueryFingerprint.normalize("select alias_1 from User alias_1 where alias_1.username = a"))
+                .isNotEqualTo(QueryFingerprint.normalize("select alias_1 from User alias_1 where alias_1.username = b"));
+    }
+}
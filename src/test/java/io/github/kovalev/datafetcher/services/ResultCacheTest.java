@@ -0,0 +1,66 @@
+package io.github.kovalev.datafetcher.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResultCacheTest {
+
+    private static final ResultCache.Key KEY = new ResultCache.Key("page", "select a0 from User a0", List.of(0));
+
+    @Test
+    void concurrentMissesLoadOnce() throws InterruptedException {
+        ResultCache cache = new ResultCache(100, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<List<String>>> futures = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> cache.get(KEY, () -> {
+                        loads.incrementAndGet();
+                        await(release);
+                        return List.of("a", "b");
+                    }), executor))
+                    .toList();
+            TimeUnit.MILLISECONDS.sleep(100);
+            release.countDown();
+
+            assertThat(futures).allSatisfy(future -> assertThat(future.join()).containsExactly("a", "b"));
+            assertThat(loads).hasValue(1);
+            assertThat(cache.<List<String>>get(KEY, () -> List.of("c"))).containsExactly("a", "b");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        ResultCache cache = new ResultCache(100, Duration.ofMinutes(1));
+
+        assertThatThrownBy(() -> cache.get(KEY, () -> {
+            throw new IllegalStateException("ошибка");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.<String>get(KEY, () -> "value")).isEqualTo("value");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
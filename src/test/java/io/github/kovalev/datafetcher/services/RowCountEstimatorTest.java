@@ -0,0 +1,27 @@
+package io.github.kovalev.datafetcher.services;
+
+import org.hibernate.dialect.DatabaseVersion;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RowCountEstimatorTest {
+
+    @Test
+    void numberParameters_ShouldReplacePlaceholdersOutsideLiterals() {
+        String sql = "select u.id from users u where u.username=? and u.email<>'?' and u.id in (?,?)";
+
+        assertThat(RowCountEstimator.numberParameters(sql))
+                .isEqualTo("select u.id from users u where u.username=$1 and u.email<>'?' and u.id in ($2,$3)");
+    }
+
+    @Test
+    void supports_ShouldRequirePostgreSql16() {
+        assertThat(RowCountEstimator.supports(new PostgreSQLDialect(DatabaseVersion.make(17, 2)))).isTrue();
+        assertThat(RowCountEstimator.supports(new PostgreSQLDialect(DatabaseVersion.make(16)))).isTrue();
+        assertThat(RowCountEstimator.supports(new PostgreSQLDialect(DatabaseVersion.make(15)))).isFalse();
+        assertThat(RowCountEstimator.supports(new H2Dialect())).isFalse();
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.kovalev.datafetcher.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetCursorTest {
+
+    @Test
+    void encodeAndDecode_shouldKeepKeysOrderAndDirection() {
+        UUID id = UUID.randomUUID();
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("author.username", "john & emma=1");
+        keys.put("id", id);
+
+        String cursor = KeysetCursor.encode(ScrollPosition.backward(keys));
+        KeysetScrollPosition position = KeysetCursor.decode(cursor);
+
+        assertThat(cursor).doesNotContain("john");
+        assertThat(position.scrollsBackward()).isTrue();
+        assertThat(position.getKeys()).containsExactly(
+                Map.entry("author.username", "john & emma=1"),
+                Map.entry("id", id.toString())
+        );
+    }
+
+    @Test
+    void decode_shouldReturnInitialPosition_WhenCursorIsEmpty() {
+        assertThat(KeysetCursor.decode(null).isInitial()).isTrue();
+        assertThat(KeysetCursor.decode("").isInitial()).isTrue();
+    }
+
+    @Test
+    void decode_shouldFail_WhenCursorIsMalformed() {
+        assertThatThrownBy(() -> KeysetCursor.decode("not a cursor"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void convert_shouldRestoreColumnType() {
+        LocalDateTime dateTime = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+        UUID id = UUID.randomUUID();
+
+        assertThat(KeysetSpecification.convert(dateTime.toString(), LocalDateTime.class)).isEqualTo(dateTime);
+        assertThat(KeysetSpecification.convert(id.toString(), UUID.class)).isEqualTo(id);
+        assertThat(KeysetSpecification.convert("42", Long.class)).isEqualTo(42L);
+        assertThat(KeysetSpecification.convert(42L, Long.class)).isEqualTo(42L);
+    }
+}
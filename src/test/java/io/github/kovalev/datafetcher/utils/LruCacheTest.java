@@ -0,0 +1,103 @@
+package io.github.kovalev.datafetcher.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LruCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedBySize() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.getIfPresent("a");
+        cache.put("c", "3");
+
+        assertThat(cache.getIfPresent("a")).isEqualTo("1");
+        assertThat(cache.getIfPresent("b")).isNull();
+        assertThat(cache.getIfPresent("c")).isEqualTo("3");
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsByWeight() {
+        LruCache<String, String> cache = new LruCache<>(5, String::length, null);
+        cache.put("a", "aaa");
+        cache.put("b", "bb");
+        cache.put("c", "cc");
+
+        assertThat(cache.getIfPresent("a")).isNull();
+        assertThat(cache.getIfPresent("b")).isEqualTo("bb");
+        assertThat(cache.getIfPresent("c")).isEqualTo("cc");
+
+        cache.put("b", "b");
+        cache.put("d", "dd");
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    void expiresAfterWrite() {
+        AtomicLong time = new AtomicLong();
+        LruCache<String, String> cache = new LruCache<>(10, value -> 1, Duration.ofNanos(100), time::get);
+        cache.put("a", "1");
+
+        time.set(99);
+        assertThat(cache.getIfPresent("a")).isEqualTo("1");
+        time.set(100);
+        assertThat(cache.getIfPresent("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void invalidateIfRemovesMatchingKeys() {
+        LruCache<String, String> cache = new LruCache<>(10);
+        cache.put("user:1", "a");
+        cache.put("user:2", "b");
+        cache.put("post:1", "c");
+
+        cache.invalidateIf(key -> key.startsWith("user:"));
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getIfPresent("post:1")).isEqualTo("c");
+    }
+
+    @Test
+    void invalidateGroupRemovesGroupKeys() {
+        LruCache<String, String> cache = new LruCache<>(3, value -> 1, null,
+                key -> key.substring(key.indexOf(':') + 1));
+        cache.put("posts:1", "a");
+        cache.put("comments:1", "b");
+        cache.put("posts:2", "c");
+
+        cache.invalidateGroup("1");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getIfPresent("posts:2")).isEqualTo("c");
+
+        // Вытесненные записи удаляются и из групп
+        cache.put("posts:3", "d");
+        cache.put("comments:3", "e");
+        cache.put("posts:4", "f");
+        assertThat(cache.getIfPresent("posts:2")).isNull();
+        cache.put("posts:2", "g");
+        cache.invalidateGroup("3");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getIfPresent("posts:2")).isEqualTo("g");
+        assertThat(cache.getIfPresent("posts:4")).isEqualTo("f");
+
+        assertThatThrownBy(() -> new LruCache<String, String>(1).invalidateGroup("1"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void zeroSizeDisablesCaching() {
+        LruCache<String, String> cache = new LruCache<>(0);
+        assertThat(cache.get("a", key -> "1")).isEqualTo("1");
+        assertThat(cache.size()).isZero();
+        assertThatThrownBy(() -> new LruCache<>(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
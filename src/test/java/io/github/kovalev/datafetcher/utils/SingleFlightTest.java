@@ -0,0 +1,86 @@
+package io.github.kovalev.datafetcher.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallsWithSameKeyShareExecution() throws InterruptedException {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>(4);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Integer>> futures = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+                        await(release);
+                        return executions.incrementAndGet();
+                    }), executor))
+                    .toList();
+            TimeUnit.MILLISECONDS.sleep(100);
+            release.countDown();
+
+            assertThat(futures).allSatisfy(future -> assertThat(future.join()).isEqualTo(1));
+            assertThat(executions).hasValue(1);
+            assertThat(singleFlight.shared()).isEqualTo(7);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void completedExecutionIsNotReused() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        singleFlight.execute("key", executions::incrementAndGet);
+
+        assertThat(singleFlight.execute("key", executions::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    void differentKeysDoNotWaitForEachOther() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(1);
+
+        String outer = singleFlight.execute("a", () -> singleFlight.execute("b", () -> "b") + "a");
+
+        assertThat(outer).isEqualTo("ba");
+    }
+
+    @Test
+    void failureIsPropagatedAndForgotten() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        assertThatThrownBy(() -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("ошибка");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(singleFlight.execute("key", () -> "value")).isEqualTo("value");
+    }
+
+    @Test
+    void rejectsNonPositiveConcurrencyLevel() {
+        assertThatThrownBy(() -> new SingleFlight<>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}